@@ -0,0 +1,135 @@
+package DictionaryServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Synthetic dictionaries for the benchmarks. The same seed always gives the same words and
+// meanings, so runs on different builds measure the same data.
+final class Fixtures {
+    private static final String[] VOCABULARY = {
+            "a", "the", "small", "large", "kind", "of", "used", "to", "make", "place", "person", "who",
+            "something", "that", "is", "in", "or", "with", "for", "an", "animal", "tool", "state",
+            "being", "act", "quality", "part", "water", "light", "time", "way", "feeling"
+    };
+
+    private Fixtures() {
+    }
+
+    // The n-th word: letters only, as addWord demands, and distinct for every n
+    static String word(long n) {
+        StringBuilder word = new StringBuilder();
+        do {
+            word.append((char) ('a' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return word.append("word").toString();
+    }
+
+    static String[] words(int count) {
+        String[] words = new String[count];
+        for (int i = 0; i < count; i++) words[i] = word(i);
+        return words;
+    }
+
+    // Distinct pronounceable words of two to four syllables. Far more of them share prefixes and
+    // lie a couple of edits apart than in real English, the hard case for "did you mean".
+    static String[] syllableWords(int count) {
+        String consonants = "bcdfghjklmnprstvz";
+        String vowels = "aeiou";
+        Random random = new Random(42);
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < count) {
+            StringBuilder word = new StringBuilder();
+            for (int s = 2 + random.nextInt(3); s > 0; s--) {
+                word.append(consonants.charAt(random.nextInt(consonants.length())));
+                word.append(vowels.charAt(random.nextInt(vowels.length())));
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+
+    static String[] meanings(Random random) {
+        String[] meanings = new String[1 + random.nextInt(3)];
+        for (int i = 0; i < meanings.length; i++) {
+            StringBuilder meaning = new StringBuilder();
+            int length = 4 + random.nextInt(8);
+            for (int w = 0; w < length; w++) {
+                if (w > 0) meaning.append(' ');
+                meaning.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+            }
+            meanings[i] = meaning.toString();
+        }
+        return meanings;
+    }
+
+    // A store holding the first `count` words, not wired to any index
+    static DictionaryStore store(int count) {
+        DictionaryStore store = new DictionaryStore((word, before, after) -> { });
+        fill(store, count);
+        return store;
+    }
+
+    private static void fill(DictionaryStore store, int count) {
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) store.restore(word(i), meanings(random));
+    }
+
+    // dictionary.json with `count` words in a fresh directory, in the layout the server loads
+    // for the given --snapshot format; returns the path to pass as the dictionary file
+    static Path dictionary(int count, String format) throws IOException {
+        Path file = Files.createTempDirectory("ds-bench").resolve("dictionary.json");
+        switch (format) {
+            case "json":
+                try (DictionaryStore.View view = store(count).snapshot()) {
+                    Snapshot.writeJson(view, file);
+                }
+                break;
+            case "binary":
+                try (DictionaryStore.View view = store(count).snapshot()) {
+                    Snapshot.writeBinary(view, Paths.get(file + ".snap"));
+                }
+                break;
+            case "segments":
+                DictionaryStore store = new DictionaryStore((word, before, after) -> { });
+                store.attach(Collections.emptyList());
+                fill(store, count);
+                Iterator<Path> paths = new Iterator<Path>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return true;
+                    }
+
+                    @Override
+                    public Path next() {
+                        return file.resolveSibling(file.getFileName() + ".0.seg." + next++);
+                    }
+                };
+                StringBuilder manifest = new StringBuilder();
+                for (Segment segment : store.compact(paths)) manifest.append(segment.path.getFileName()).append('\n');
+                Files.write(Paths.get(file + ".segments"), manifest.toString().getBytes(StandardCharsets.UTF_8));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown snapshot format " + format);
+        }
+        return file;
+    }
+
+    static void delete(Path file) throws IOException {
+        try (Stream<Path> files = Files.walk(file.getParent())) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
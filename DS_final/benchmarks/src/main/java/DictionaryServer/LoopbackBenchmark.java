@@ -0,0 +1,109 @@
+package DictionaryServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import DictionaryProtocol.BinaryProtocol;
+
+// One query round trip over a loopback socket against a server running in the benchmark's
+// JVM: encode, send, the server's read/dispatch/reply, and reading the answer back. Each
+// benchmark thread holds its own connection.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+    @Param({"100000"})
+    int words;
+
+    // Front end: the thread-per-client default, or --mode=nio / --mode=virtual
+    @Param({"threads", "nio"})
+    String mode;
+
+    @Param({"json", "binary"})
+    String protocol;
+
+    // --response-cache size, 0 to answer every query from the dictionary
+    @Param({"10000"})
+    int responseCache;
+
+    private Path file;
+    private int port;
+    private String[] known;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = Fixtures.dictionary(words, "json");
+        port = Fixtures.freePort();
+        Server.configure(new String[]{String.valueOf(port), file.toString(), "--mode=" + mode,
+                "--response-cache=" + responseCache});
+        Thread server = new Thread(() -> Server.serve(port), "benchmark-server");
+        server.setDaemon(true);
+        server.start();
+        known = Fixtures.words(words);
+        // serve() binds in its own thread; wait until it accepts
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (true) {
+            try (Socket probe = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                return;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) throw e;
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(file);
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        private final SplittableRandom random = new SplittableRandom();
+        private Socket socket;
+        private OutputStream out;
+        private BufferedReader lines;
+        private DataInputStream frames;
+        private int nextId;
+
+        @Setup(Level.Trial)
+        public void connect(LoopbackBenchmark benchmark) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), benchmark.port);
+            socket.setTcpNoDelay(true);
+            out = new BufferedOutputStream(socket.getOutputStream());
+            if (benchmark.protocol.equals("binary")) {
+                out.write(BinaryProtocol.HANDSHAKE);
+                out.flush();
+                frames = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                if (frames.read() != BinaryProtocol.HANDSHAKE) throw new IOException("Server refused the binary protocol");
+            } else {
+                lines = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public Object query(Connection connection) throws IOException {
+        String word = known[connection.random.nextInt(known.length)];
+        if (connection.frames != null) {
+            BinaryProtocol.write(connection.out, BinaryProtocol.QUERY, connection.nextId++, word);
+            return BinaryProtocol.read(connection.frames);
+        }
+        connection.out.write(("{\"request\":\"query\",\"word\":\"" + word + "\"}\n").getBytes(StandardCharsets.UTF_8));
+        connection.out.flush();
+        return connection.lines.readLine();
+    }
+}
@@ -0,0 +1,82 @@
+package DictionaryServer;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.*;
+
+// queryWord and addWord called straight on a loaded server, from several threads at once:
+// readers alone, writers alone, and three readers next to one writer. Run with -t to change
+// the thread count of the first two.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OperationsBenchmark {
+    private static final List<String> MEANINGS = Arrays.asList("a word added by the benchmark", "another meaning");
+
+    @Param({"100000"})
+    int words;
+
+    // --fsync policy of the log every addWord goes through
+    @Param({"os"})
+    String fsync;
+
+    private Path file;
+    private String[] known;
+    private final AtomicLong added = new AtomicLong();
+
+    @State(Scope.Thread)
+    public static class Picker {
+        private final SplittableRandom random = new SplittableRandom();
+
+        String next(String[] words) {
+            return words[random.nextInt(words.length)];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = Fixtures.dictionary(words, "json");
+        Server.configure(new String[]{"0", file.toString(), "--fsync=" + fsync});
+        known = Fixtures.words(words);
+        added.set(words);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(file);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Reply query(Picker picker) {
+        return Server.queryWord(picker.next(known));
+    }
+
+    // Every call adds a word nobody has added before, so none is rejected as a duplicate
+    @Benchmark
+    @Threads(4)
+    public Reply addWord() {
+        return Server.addWord(Fixtures.word(added.getAndIncrement()), MEANINGS);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Reply mixedQuery(Picker picker) {
+        return Server.queryWord(picker.next(known));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Reply mixedAddWord() {
+        return Server.addWord(Fixtures.word(added.getAndIncrement()), MEANINGS);
+    }
+}
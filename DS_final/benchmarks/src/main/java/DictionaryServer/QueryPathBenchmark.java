@@ -0,0 +1,73 @@
+package DictionaryServer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// A cached query line turned into its response line, as the thread-per-client front end does
+// it: through QueryFastPath straight from the bytes read, or through the general path (decode
+// the line, JSONObject, handleRequest, encode the answer). Run with -prof gc to compare
+// gc.alloc.rate.norm, the bytes allocated per query.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryPathBenchmark {
+    // Words queried, all of them kept in the response cache
+    private static final int QUERIED = 1024;
+
+    @Param({"100000"})
+    int words;
+
+    // Whether the lines carry an "id" to echo, as pipelining clients send
+    @Param({"false", "true"})
+    boolean withId;
+
+    private Path file;
+    private byte[][] lines;
+    private int next;
+    private final QueryFastPath fastPath = new QueryFastPath();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = Fixtures.dictionary(words, "json");
+        Server.configure(new String[]{"0", file.toString()});
+        lines = new byte[QUERIED][];
+        for (int i = 0; i < QUERIED; i++) {
+            String line = "{\"request\":\"query\",\"word\":\"" + Fixtures.word(i * (words / QUERIED)) + "\""
+                    + (withId ? ",\"id\":" + i : "") + "}";
+            lines[i] = line.getBytes(StandardCharsets.UTF_8);
+            // The first query of a word fills the cache
+            Server.handleRequest(line);
+            if (Server.cachedQueryLine(fastPath, lines[i], 0, lines[i].length) == null) {
+                throw new IllegalStateException("Not answered from the cache: " + line);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(file);
+    }
+
+    private byte[] nextLine() {
+        next = (next + 1) & (QUERIED - 1);
+        return lines[next];
+    }
+
+    @Benchmark
+    public byte[] fastPath() {
+        byte[] line = nextLine();
+        return fastPath.withId(Server.cachedQueryLine(fastPath, line, 0, line.length));
+    }
+
+    @Benchmark
+    public byte[] jsonPath() {
+        byte[] line = nextLine();
+        String response = Server.handleRequest(new String(line, 0, line.length, StandardCharsets.UTF_8));
+        return response.getBytes(StandardCharsets.UTF_8);
+    }
+}
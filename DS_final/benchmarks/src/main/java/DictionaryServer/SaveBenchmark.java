@@ -0,0 +1,39 @@
+package DictionaryServer;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// One saveDictionary (the snapshot half of a checkpoint) against the size of the dictionary,
+// for each --snapshot format. In segment mode it is a full compaction of unchanged segments.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SaveBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int words;
+
+    @Param({"json", "binary", "segments"})
+    String format;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = Fixtures.dictionary(words, "json");
+        Server.configure(new String[]{"0", file.toString(), "--snapshot=" + format});
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(file);
+    }
+
+    @Benchmark
+    public boolean saveDictionary() {
+        return Server.saveDictionary();
+    }
+}
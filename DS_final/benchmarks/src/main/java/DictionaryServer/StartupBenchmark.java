@@ -0,0 +1,39 @@
+package DictionaryServer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Time from a fresh JVM to a loaded, indexed dictionary (loadDictionary plus the option
+// handling around it). The server's state is static, so every measurement is its own fork.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class StartupBenchmark {
+    @Param({"100000", "1000000"})
+    int words;
+
+    @Param({"json", "binary", "segments"})
+    String format;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = Fixtures.dictionary(words, format);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(file);
+    }
+
+    @Benchmark
+    public int loadDictionary() throws IOException {
+        return Server.configure(new String[]{"0", file.toString(), "--snapshot=" + format});
+    }
+}
@@ -0,0 +1,69 @@
+package DictionaryServer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// One FuzzyMatcher.suggest, as a query miss makes it, over 500k syllable words. Every query is
+// a real word with `distance` random edits, so there is always something within reach to find.
+// Sampled, so the percentiles show next to the mean.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SuggestBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"500000"})
+    int words;
+
+    // --suggest-distance, and the edits made to each query
+    @Param({"1", "2"})
+    int distance;
+
+    // --suggest-budget: the server's default, and no bound at all
+    @Param({"5000", "2147483647"})
+    int budget;
+
+    private FuzzyMatcher matcher;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] all = Fixtures.syllableWords(words);
+        matcher = new FuzzyMatcher(new ConcurrentSkipListSet<>(Arrays.asList(all)), new HashSet<>(Arrays.asList(all))::contains);
+        Random random = new Random(7);
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) queries[i] = edit(all[random.nextInt(all.length)], distance, random);
+    }
+
+    // Substitutions, insertions and deletions of random letters
+    private static String edit(String word, int edits, Random random) {
+        StringBuilder edited = new StringBuilder(word);
+        for (int e = 0; e < edits; e++) {
+            int at = random.nextInt(edited.length());
+            char letter = (char) ('a' + random.nextInt(26));
+            switch (random.nextInt(3)) {
+                case 0:
+                    edited.setCharAt(at, letter);
+                    break;
+                case 1:
+                    edited.insert(at, letter);
+                    break;
+                default:
+                    if (edited.length() > 1) edited.deleteCharAt(at);
+            }
+        }
+        return edited.toString();
+    }
+
+    @Benchmark
+    public List<String> suggest() {
+        String query = queries[next++ & (QUERIES - 1)];
+        return matcher.suggest(query, distance, 5, budget);
+    }
+}
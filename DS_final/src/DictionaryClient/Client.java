@@ -7,6 +7,9 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.json.*;
 
 public class Client {
@@ -17,17 +20,22 @@ public class Client {
     private JTextField existingMeaningField;
     private JLabel meaningLabel;
     private JLabel existingMeaningLabel;
+    private JLabel suggestionLabel;
     private JTextArea resultArea;
     private JComboBox<String> actionBox;
     private JButton sendButton, disconnectButton, searchCambridgeButton;
     private JPanel inputPanel;
 
-    private Socket socket;
-    private BufferedReader input;
-    private PrintWriter output;
+    // All network I/O happens on the connection's own thread, never on the Swing thread
+    private ServerConnection connection;
+    // Existence checks wait until typing pauses, and a newer check cancels the one before it
+    private static final int EXISTENCE_CHECK_DELAY_MS = 250;
+    private Timer existenceCheckTimer;
+    private CompletableFuture<JSONObject> pendingExistenceCheck;
 
     private String serverAddress;
     private int serverPort;
+    private boolean binary;
 
     private DefaultComboBoxModel<String> actionModel;
 
@@ -45,13 +53,20 @@ public class Client {
                 System.err.println("Invalid port number, using default port " + serverPort);
             }
         }
-        new Client(serverAddress, serverPort);
+        // optional third argument "binary" switches to the compact binary protocol
+        boolean binary = args.length > 2 && args[2].equalsIgnoreCase("binary");
+        new Client(serverAddress, serverPort, binary);
     }
 
 
     public Client(String serverAddress, int serverPort) {
+        this(serverAddress, serverPort, false);
+    }
+
+    public Client(String serverAddress, int serverPort, boolean binary) {
         this.serverAddress = serverAddress;
         this.serverPort = serverPort;
+        this.binary = binary;
         guiStructure();
         connectToServer();
     }
@@ -59,9 +74,7 @@ public class Client {
     private void connectToServer() {
         try {
             // setting up the connection between server and client
-            socket = new Socket(serverAddress, serverPort);
-            input = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
-            output = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true);
+            connection = new ServerConnection(serverAddress, serverPort, binary);
             resultArea.append("Connected to server.\n");
         } catch (IOException e) {
             // pop out the message box when failed to connect
@@ -122,20 +135,31 @@ public class Client {
         inputPanel.add(actionLabel);
         inputPanel.add(actionBox);
 
-        // set up logic for detected the field of word is empnty or not
+        // words starting with what has been typed so far, filled in by updateActions
+        JLabel suggestionTitle = new JLabel("Suggestions:");
+        suggestionTitle.setForeground(Color.white);
+        suggestionLabel = new JLabel(" ");
+        suggestionLabel.setForeground(Color.white);
+        inputPanel.add(suggestionTitle);
+        inputPanel.add(suggestionLabel);
+
+        // set up logic for detected the field of word is empnty or not;
+        // the server is only asked once typing has paused for a moment
+        existenceCheckTimer = new Timer(EXISTENCE_CHECK_DELAY_MS, e -> updateActions());
+        existenceCheckTimer.setRepeats(false);
         wordField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
             public void changedUpdate(javax.swing.event.DocumentEvent e) {
-                updateActions();
+                existenceCheckTimer.restart();
                 updateCambridgeButton();
             }
 
             public void insertUpdate(javax.swing.event.DocumentEvent e) {
-                updateActions();
+                existenceCheckTimer.restart();
                 updateCambridgeButton();
             }
 
             public void removeUpdate(javax.swing.event.DocumentEvent e) {
-                updateActions();
+                existenceCheckTimer.restart();
                 updateCambridgeButton();
             }
         });
@@ -208,16 +232,43 @@ public class Client {
     }
 
 
+    // Runs on the Swing thread when typing pauses; the answer is applied back on the Swing thread
     private void updateActions() {
         String word = wordField.getText().trim();
+        if (pendingExistenceCheck != null) pendingExistenceCheck.cancel(false);
         if (word.isEmpty()) {
-            if (actionModel.getIndexOf("updatemeaning") != -1) actionModel.removeElement("updatemeaning");
-            if (actionModel.getIndexOf("addmeaning") != -1) actionModel.removeElement("addmeaning");
+            pendingExistenceCheck = null;
+            showActions(false);
+            suggestionLabel.setText(" ");
             return;
         }
-        // detected
-        boolean wordExists = checkIfWordExists(word);
-        // logic for show up actions in toggle box
+        // one prefix lookup gives both the suggestions and whether the word itself exists,
+        // since an existing word sorts ahead of every longer word starting with it
+        JSONObject request = new JSONObject();
+        request.put("request", "prefix");
+        request.put("word", word);
+        request.put("limit", 5);
+        CompletableFuture<JSONObject> check = connection.send(request);
+        pendingExistenceCheck = check;
+        check.whenComplete((response, error) -> SwingUtilities.invokeLater(() -> {
+            // a newer keystroke already asked again, this answer is stale
+            if (check != pendingExistenceCheck || check.isCancelled()) return;
+            if (error != null) {
+                resultArea.append("Error reading server response: " + error.getMessage() + "\n");
+                return;
+            }
+            List<String> suggestions = new ArrayList<>();
+            JSONArray words = response == null ? null : response.optJSONArray("words");
+            if (words != null) {
+                for (int i = 0; i < words.length(); i++) suggestions.add(words.getString(i));
+            }
+            suggestionLabel.setText(suggestions.isEmpty() ? " " : String.join(", ", suggestions));
+            showActions(!suggestions.isEmpty() && suggestions.get(0).equals(word.toLowerCase()));
+        }));
+    }
+
+    // logic for show up actions in toggle box
+    private void showActions(boolean wordExists) {
         if (wordExists) {
             if (actionModel.getIndexOf("addmeaning") == -1) actionModel.addElement("addmeaning");
             if (actionModel.getIndexOf("updatemeaning") == -1) actionModel.addElement("updatemeaning");
@@ -231,26 +282,6 @@ public class Client {
         searchCambridgeButton.setEnabled(!wordField.getText().trim().isEmpty());
     }
 
-    // Logic of adding a new word
-    private boolean checkIfWordExists(String word) {
-        JSONObject request = new JSONObject();
-        request.put("request", "query");
-        request.put("word", word);
-        // send the inquiry to server
-        output.println(request.toString());
-
-        // Wait for server to determine the action
-        try {
-            String response = input.readLine();
-            if (response != null) {
-                JSONObject jsonResponse = new JSONObject(response);
-                return jsonResponse.optString("status").equals("success");
-            }
-        } catch (IOException e) {
-            resultArea.append("Error reading server response: " + e.getMessage() + "\n");
-        }
-        return false;
-    }
     // Handle the request from client and send the response to server
     private void userActionHandler() {
         String word = wordField.getText().trim();
@@ -294,48 +325,40 @@ public class Client {
                 break;
         }
 
-        output.println(request.toString());
-        // send the request object which changed into json file to server
-        try {
-            String response = input.readLine();
-            if (response != null) {
-                JSONObject jsonResponse = new JSONObject(response);
+        // send the request object which changed into json file to server, show the answer when it arrives
+        connection.send(request).whenComplete((jsonResponse, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                resultArea.append("Error reading server response: " + error.getMessage() + "\n");
+            } else if (jsonResponse != null) {
                 resultArea.append("Server: " + jsonResponse.toString(2) + "\n");
             } else {
                 resultArea.append("Server closed the connection.\n");
             }
-        } catch (IOException e) {
-            resultArea.append("Error reading server response: " + e.getMessage() + "\n");
-        }
 
-        wordField.setText("");
-        meaningField.setText("");
-        existingMeaningField.setText("");
-        updateCambridgeButton();
+            wordField.setText("");
+            meaningField.setText("");
+            existingMeaningField.setText("");
+            updateCambridgeButton();
+        }));
     }
 
     private void disconnect() {
         JSONObject request = new JSONObject();
         request.put("request", "disconnect");
-        output.println(request.toString());
-        try {
-            String response = input.readLine();
-            if (response != null) {
-                resultArea.append("Server: " + new JSONObject(response).toString(2) + "\n");
-            }
-        } catch (IOException e) {
-            resultArea.append("Error disconnecting: " + e.getMessage() + "\n");
-        }
-
-        try {
-            socket.close();
-        } catch (IOException e) {
-            // Ignore
-        }
-
+        existenceCheckTimer.stop();
         sendButton.setEnabled(false);
         disconnectButton.setEnabled(false);
-        searchCambridgeButton.setEnabled(false);
-        resultArea.append("Disconnected from server.\n");
+        connection.send(request).whenComplete((response, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                resultArea.append("Error disconnecting: " + error.getMessage() + "\n");
+            } else if (response != null) {
+                resultArea.append("Server: " + response.toString(2) + "\n");
+            }
+            connection.close();
+
+            searchCambridgeButton.setEnabled(false);
+            resultArea.append(connection.cacheStats() + "\n");
+            resultArea.append("Disconnected from server.\n");
+        }));
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
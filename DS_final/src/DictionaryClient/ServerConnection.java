@@ -0,0 +1,252 @@
+package DictionaryClient;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import org.json.*;
+import DictionaryProtocol.BinaryProtocol;
+
+// Owns the socket to the dictionary server. Requests are written by one I/O thread, in the order
+// they were made, and a reader thread matches responses to them in the same order, so the Swing
+// event dispatch thread never blocks on the network; callers get a CompletableFuture with the
+// response in the JSON shape whichever protocol is used. Once subscribed to invalidations,
+// query and prefix responses are served from a WordCache that the pushed events keep fresh.
+// Public so the headless tools (DictionaryLoad) talk to the server through the same code.
+public class ServerConnection implements Closeable {
+    private static final int CACHE_ENTRIES = 1000;
+
+    private final Socket socket;
+    private final boolean binary;
+    private BufferedReader input;
+    private PrintWriter output;
+    // Used instead of input/output when talking the binary protocol
+    private DataInputStream binaryInput;
+    private OutputStream binaryOutput;
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "dictionary-client-io");
+        t.setDaemon(true);
+        return t;
+    });
+    // Requests written but not answered yet, oldest first
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final WordCache cache = new WordCache(CACHE_ENTRIES);
+    private volatile boolean cacheEnabled;
+    // Set once the reader stops; requests after that would never be answered
+    private volatile boolean readerDone;
+
+    private static final class Pending {
+        final String action;
+        final CompletableFuture<JSONObject> response;
+        final String cacheKey;
+        final long generation;
+
+        Pending(String action, CompletableFuture<JSONObject> response, String cacheKey, long generation) {
+            this.action = action;
+            this.response = response;
+            this.cacheKey = cacheKey;
+            this.generation = generation;
+        }
+    }
+
+    public ServerConnection(String serverAddress, int serverPort, boolean binary) throws IOException {
+        this(serverAddress, serverPort, binary, true);
+    }
+
+    // Without `cached` every request goes to the server, as a load generator needs
+    public ServerConnection(String serverAddress, int serverPort, boolean binary, boolean cached) throws IOException {
+        this.socket = new Socket(serverAddress, serverPort);
+        this.binary = binary;
+        if (binary) {
+            binaryOutput = new BufferedOutputStream(socket.getOutputStream());
+            binaryInput = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            binaryOutput.write(BinaryProtocol.HANDSHAKE);
+            binaryOutput.flush();
+            if (binaryInput.read() != BinaryProtocol.HANDSHAKE) {
+                socket.close();
+                throw new IOException("Server does not support the binary protocol");
+            }
+        } else {
+            input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            output = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+        }
+        Thread reader = new Thread(this::readLoop, "dictionary-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+        // Servers that do not know "subscribe" just answer with an error and the cache stays off
+        if (cached) {
+            send(new JSONObject().put("request", "subscribe")).thenAccept(response ->
+                    cacheEnabled = response != null && "success".equals(response.optString("status")));
+        }
+    }
+
+    // Queue a request; cancelling the future before its turn comes means it is never sent.
+    // Completes with null when the server closed the connection.
+    public CompletableFuture<JSONObject> send(JSONObject request) {
+        String key = WordCache.keyOf(request);
+        if (key != null && cacheEnabled) {
+            JSONObject cached = cache.get(key);
+            if (cached != null) return CompletableFuture.completedFuture(cached);
+        }
+        String action = request.optString("request");
+        // Our own change: do not wait for the server's event to stop serving the old entry
+        if (key == null && request.has("word")) cache.invalidate(request.optString("word").toLowerCase());
+        CompletableFuture<JSONObject> response = new CompletableFuture<>();
+        try {
+            io.execute(() -> {
+                if (response.isDone()) return;
+                Pending entry = new Pending(action, response, key, cache.generation());
+                pending.add(entry);
+                // The reader may have drained the queue just before the add
+                if (readerDone) {
+                    pending.remove(entry);
+                    response.complete(null);
+                    return;
+                }
+                try {
+                    write(request);
+                } catch (Exception e) {
+                    pending.remove(entry);
+                    response.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            response.completeExceptionally(new IOException("Connection is closed."));
+        }
+        return response;
+    }
+
+    public String cacheStats() {
+        return cache.stats();
+    }
+
+    // Runs on the reader thread: responses answer the oldest pending request, events go to the cache
+    private void readLoop() {
+        try {
+            while (true) {
+                JSONObject response;
+                if (binary) {
+                    BinaryProtocol.Frame reply = BinaryProtocol.read(binaryInput);
+                    if (reply == null) break;
+                    if (reply.code == BinaryProtocol.INVALIDATE) {
+                        cache.invalidate(reply.field(0));
+                        continue;
+                    }
+                    Pending next = pending.peek();
+                    response = toJson(reply, next == null ? "" : next.action);
+                } else {
+                    String line = input.readLine();
+                    if (line == null) break;
+                    response = new JSONObject(line);
+                    if ("invalidate".equals(response.optString("event"))) {
+                        cache.invalidate(response.getString("word"));
+                        continue;
+                    }
+                }
+                Pending next = pending.poll();
+                if (next == null) continue;
+                // Only answers that hold until the word changes: a miss carries suggestions that
+                // other words' changes make stale, and overload replies are passing
+                if (next.cacheKey != null && "success".equals(response.optString("status"))) {
+                    cache.put(next.cacheKey, response, next.generation);
+                }
+                next.response.complete(response);
+            }
+        } catch (Exception e) {
+            // Events stop with the connection, so nothing cached can be trusted any more
+            cacheEnabled = false;
+            readerDone = true;
+            Pending next;
+            while ((next = pending.poll()) != null) next.response.completeExceptionally(e);
+            return;
+        }
+        cacheEnabled = false;
+        readerDone = true;
+        Pending next;
+        while ((next = pending.poll()) != null) next.response.complete(null);
+    }
+
+    // Runs on the I/O thread only
+    private void write(JSONObject request) throws IOException {
+        if (!binary) {
+            output.println(request.toString());
+            if (output.checkError()) throw new IOException("Connection is closed.");
+            return;
+        }
+        String word = request.optString("word");
+        String action = request.optString("request");
+        switch (action) {
+            case "query":
+                BinaryProtocol.write(binaryOutput, BinaryProtocol.QUERY, 0, word);
+                break;
+            case "add":
+                List<String> fields = new ArrayList<>();
+                fields.add(word);
+                JSONArray meanings = request.getJSONArray("meanings");
+                for (int i = 0; i < meanings.length(); i++) fields.add(meanings.getString(i));
+                BinaryProtocol.write(binaryOutput, BinaryProtocol.ADD, 0, fields.toArray(new String[0]));
+                break;
+            case "remove":
+                BinaryProtocol.write(binaryOutput, BinaryProtocol.REMOVE, 0, word);
+                break;
+            case "addmeaning":
+                BinaryProtocol.write(binaryOutput, BinaryProtocol.ADD_MEANING, 0, word, request.getString("meaning"));
+                break;
+            case "updatemeaning":
+                BinaryProtocol.write(binaryOutput, BinaryProtocol.UPDATE_MEANING, 0, word, request.getString("old"), request.getString("new"));
+                break;
+            case "prefix":
+                BinaryProtocol.write(binaryOutput, BinaryProtocol.PREFIX, 0, word, String.valueOf(request.optInt("limit", 10)));
+                break;
+            case "search":
+                BinaryProtocol.write(binaryOutput, BinaryProtocol.SEARCH, 0, request.optString("terms"),
+                        request.optString("mode", "all"), String.valueOf(request.optInt("limit", 20)));
+                break;
+            case "subscribe":
+                BinaryProtocol.write(binaryOutput, BinaryProtocol.SUBSCRIBE, 0);
+                break;
+            case "stats":
+                BinaryProtocol.write(binaryOutput, BinaryProtocol.STATS, 0);
+                break;
+            case "disconnect":
+                BinaryProtocol.write(binaryOutput, BinaryProtocol.DISCONNECT, 0);
+                break;
+            default:
+                throw new IllegalArgumentException("No binary form for request " + action);
+        }
+    }
+
+    // Binary replies carry no field names; the action of the request tells what the values are
+    private static JSONObject toJson(BinaryProtocol.Frame reply, String action) {
+        JSONObject response = new JSONObject();
+        if (!reply.field(0).isEmpty()) response.put("word", reply.field(0));
+        response.put("status", reply.code == BinaryProtocol.OK ? "success" : "error");
+        if (action.equals("stats") && reply.fields.length > 2) return response.put("stats", new JSONObject(reply.fields[2]));
+        JSONArray values = new JSONArray();
+        for (int i = 2; i < reply.fields.length; i++) values.put(reply.fields[i]);
+        if (!reply.field(1).isEmpty()) {
+            response.put("message", reply.field(1));
+            if (action.equals("query")) response.put("suggestions", values);
+        } else {
+            response.put(action.equals("prefix") || action.equals("search") ? "words" : "meanings", values);
+        }
+        return response;
+    }
+
+    // Closes the socket once everything already queued has been sent
+    @Override
+    public void close() {
+        if (io.isShutdown()) return;
+        io.execute(() -> {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        });
+        io.shutdown();
+    }
+}
@@ -0,0 +1,90 @@
+package DictionaryClient;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+// Bounded LRU cache of query and prefix responses. It is only trusted while the connection is
+// subscribed to invalidations: every event bumps the generation, and a response is only stored
+// if no event arrived between sending its request and reading it, so a lookup that raced with a
+// change is never cached. Entries are kept as JSON text and every hit is parsed into a fresh
+// object, so a caller changing its response cannot change what the next one gets.
+class WordCache {
+    private final int capacity;
+    private final LinkedHashMap<String, String> entries;
+    private long generation;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    WordCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > WordCache.this.capacity;
+            }
+        };
+    }
+
+    // Cache key for a request, or null if its response must not be cached
+    static String keyOf(JSONObject request) {
+        String action = request.optString("request");
+        // The server matches words case-insensitively, and events carry the lower-case word
+        String word = request.optString("word").toLowerCase();
+        if (action.equals("query")) return "query:" + word;
+        if (action.equals("prefix")) return "prefix:" + request.optInt("limit", 10) + ":" + word;
+        return null;
+    }
+
+    JSONObject get(String key) {
+        String cached;
+        synchronized (this) {
+            cached = entries.get(key);
+        }
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new JSONObject(cached);
+    }
+
+    synchronized long generation() {
+        return generation;
+    }
+
+    // Store a response unless something was invalidated since `seenGeneration`
+    synchronized void put(String key, JSONObject response, long seenGeneration) {
+        if (seenGeneration == generation) entries.put(key, response.toString());
+    }
+
+    // Drop the word's query result and every prefix listing it may appear in
+    synchronized void invalidate(String word) {
+        generation++;
+        entries.remove("query:" + word);
+        Iterator<String> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!key.startsWith("prefix:")) continue;
+            String prefix = key.substring(key.indexOf(':', 7) + 1);
+            if (word.startsWith(prefix)) keys.remove();
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    String stats() {
+        long h = hits();
+        long total = h + misses();
+        return String.format("Cache: %d hits, %d misses (%.1f%% hit rate)", h, total - h,
+                total == 0 ? 0.0 : 100.0 * h / total);
+    }
+}
@@ -0,0 +1,246 @@
+package DictionaryLoad;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.json.*;
+import DictionaryClient.ServerConnection;
+
+// Headless load generator for the dictionary server, built on the client's ServerConnection.
+//
+//   java DictionaryLoad.LoadGenerator [host] [port] [--name=value ...]
+//
+//   --connections=N       sockets to spread the requests over (100)
+//   --rate=N              requests per second, over all connections (1000)
+//   --duration=S          seconds measured (60), after --warmup=S unmeasured seconds (10)
+//   --mix=...             operation weights (query:90,add:4,remove:2,addmeaning:2,updatemeaning:2)
+//   --words=N             size of the generated key space (100000), or
+//   --words-from=FILE     take the key space from a dictionary.json
+//   --zipf=S              Zipf exponent of word popularity, 0 for uniform (0.99)
+//   --populate            add the generated key space to the server before starting
+//   --replay=FILE         send a recorded request log instead, see Replay; --speed=X plays it faster
+//   --binary              use the binary protocol
+//   --histogram=FILE      also write the full latency distribution (HdrHistogram percentile format)
+//
+// The run is open-loop: request i is due at start + i / rate whether or not earlier ones have
+// been answered, like independent users. Latency is measured from that due time, not from when
+// the request was actually written, so a stalled server is charged for the requests it held
+// back (no coordinated omission); the uncorrected service time is reported next to it.
+public class LoadGenerator {
+    private static final int PORT_NUMBER = 9092;
+    private static final String DEFAULT_MIX = "query:90,add:4,remove:2,addmeaning:2,updatemeaning:2";
+    // Histograms are in microseconds, the requests still in flight at the end get this long
+    private static final long DRAIN_SECONDS = 30;
+
+    private static final Map<String, String> options = new HashMap<>();
+
+    private final List<ServerConnection> connections = new ArrayList<>();
+    // From the due time, and from the moment send() was called
+    private final Recorder corrected = new Recorder(3);
+    private final Recorder uncorrected = new Recorder(3);
+    private final Histogram correctedTotal = new Histogram(3);
+    private final Histogram uncorrectedTotal = new Histogram(3);
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder rejected = new LongAdder();   // answered with status "error"
+    private final LongAdder busy = new LongAdder();       // shed by the server's admission limits
+    private final LongAdder failed = new LongAdder();     // no answer: connection closed or broken
+    private final AtomicLong inFlight = new AtomicLong();
+
+    public static void main(String[] args) {
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+            } else {
+                positional.add(arg);
+            }
+        }
+        String host = positional.size() > 0 ? positional.get(0) : "localhost";
+        int port = positional.size() > 1 ? Integer.parseInt(positional.get(1).trim()) : PORT_NUMBER;
+
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.connect(host, port, intOption("connections", 100), options.containsKey("binary"));
+            if (options.containsKey("replay")) {
+                try (Replay replay = new Replay(Paths.get(options.get("replay")),
+                        Double.parseDouble(options.getOrDefault("speed", "1")))) {
+                    generator.run(replay, null);
+                }
+            } else {
+                String[] words = options.containsKey("words-from")
+                        ? wordsFrom(Paths.get(options.get("words-from")))
+                        : generatedWords(intOption("words", 100000));
+                if (options.containsKey("populate")) generator.populate(words);
+                long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+                Workload workload = new Workload(options.getOrDefault("mix", DEFAULT_MIX), words,
+                        Double.parseDouble(options.getOrDefault("zipf", "0.99")), seed);
+                generator.run(null, workload);
+            }
+            generator.report();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            generator.connections.forEach(ServerConnection::close);
+        }
+    }
+
+    private static int intOption(String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private void connect(String host, int port, int count, boolean binary) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) connections.add(new ServerConnection(host, port, binary, false));
+        System.out.printf("Opened %d connections in %d ms.%n", count, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Closed-loop, a window of requests per connection at a time; existing words just fail
+    private void populate(String[] words) {
+        long start = System.nanoTime();
+        int window = connections.size() * 16;
+        List<CompletableFuture<JSONObject>> pending = new ArrayList<>(window);
+        for (int i = 0; i < words.length; i++) {
+            JSONObject request = new JSONObject().put("request", "add").put("word", words[i])
+                    .put("meanings", new JSONArray().put("added by the load generator"));
+            pending.add(connections.get(i % connections.size()).send(request));
+            if (pending.size() == window || i == words.length - 1) {
+                CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+                pending.clear();
+            }
+        }
+        System.out.printf("Populated %d words in %d ms.%n", words.length, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Either a replay or a workload; the replay ends with its log, the workload after the duration
+    private void run(Replay replay, Workload workload) throws IOException {
+        double intervalNanos = 1e9 / intOption("rate", 1000);
+        long warmupNanos = TimeUnit.SECONDS.toNanos(intOption("warmup", replay != null ? 0 : 10));
+        long durationNanos = TimeUnit.SECONDS.toNanos(intOption("duration", 60));
+        SplittableRandom random = new SplittableRandom(Long.parseLong(options.getOrDefault("seed", "42")));
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "load-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        reporter.scheduleAtFixedRate(() -> printInterval(start, measureFrom), 1, 1, TimeUnit.SECONDS);
+        long sent = 0;
+        try {
+            while (true) {
+                JSONObject request = replay != null ? replay.next() : workload.next(random);
+                if (request == null) break;
+                long offset = replay != null && replay.offsetNanos() >= 0 ? replay.offsetNanos() : Math.round(sent * intervalNanos);
+                if (replay == null && offset >= warmupNanos + durationNanos) break;
+                long due = start + offset;
+                long now;
+                while ((now = System.nanoTime()) < due) LockSupport.parkNanos(due - now);
+                send(connections.get((int) (sent % connections.size())), request, due, due >= measureFrom);
+                sent++;
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_SECONDS);
+            while (inFlight.get() > 0 && System.nanoTime() < deadline) LockSupport.parkNanos(1_000_000);
+        } finally {
+            reporter.shutdownNow();
+        }
+        printInterval(start, measureFrom);
+        if (inFlight.get() > 0) System.out.println(inFlight.get() + " requests were still unanswered after the drain.");
+        System.out.printf("Sent %d requests in %.1f s.%n", sent, (System.nanoTime() - start) / 1e9);
+    }
+
+    private void send(ServerConnection connection, JSONObject request, long due, boolean measured) {
+        inFlight.incrementAndGet();
+        long sentAt = System.nanoTime();
+        connection.send(request).whenComplete((response, error) -> {
+            long done = System.nanoTime();
+            inFlight.decrementAndGet();
+            if (!measured) return;
+            corrected.recordValue(Math.max(0, (done - due) / 1000));
+            uncorrected.recordValue(Math.max(0, (done - sentAt) / 1000));
+            if (error != null || response == null) {
+                failed.increment();
+            } else if (response.has("code")) {
+                busy.increment();
+            } else if ("success".equals(response.optString("status"))) {
+                succeeded.increment();
+            } else {
+                rejected.increment();
+            }
+        });
+    }
+
+    // One line per second while measuring; called from the reporter thread and once at the end
+    private synchronized void printInterval(long start, long measureFrom) {
+        Histogram interval = corrected.getIntervalHistogram();
+        correctedTotal.add(interval);
+        uncorrectedTotal.add(uncorrected.getIntervalHistogram());
+        long now = System.nanoTime();
+        if (now < measureFrom) {
+            System.out.printf("%4ds  warming up%n", (now - start) / 1_000_000_000);
+            return;
+        }
+        System.out.printf("%4ds  %8d done  p50 %8d us  p99 %8d us  max %8d us  in flight %d%n",
+                (now - start) / 1_000_000_000, interval.getTotalCount(), interval.getValueAtPercentile(50),
+                interval.getValueAtPercentile(99), interval.getMaxValue(), inFlight.get());
+    }
+
+    private synchronized void report() throws IOException {
+        long seconds = Math.max(1, intOption("duration", 60));
+        long answered = correctedTotal.getTotalCount();
+        System.out.println();
+        System.out.printf("Requests  %d measured: %d ok, %d error replies, %d busy, %d failed%n",
+                answered, succeeded.sum(), rejected.sum(), busy.sum(), failed.sum());
+        if (!options.containsKey("replay")) System.out.printf("Throughput  %.1f requests/s%n", (double) answered / seconds);
+        System.out.println("Latency (us)      corrected   service time");
+        for (double percentile : new double[]{50, 90, 99, 99.9, 99.99, 100}) {
+            System.out.printf("  p%-7s %14d %14d%n", percentile == 100 ? "max" : String.valueOf(percentile),
+                    correctedTotal.getValueAtPercentile(percentile), uncorrectedTotal.getValueAtPercentile(percentile));
+        }
+        String file = options.get("histogram");
+        if (file != null) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(file), false, "UTF-8")) {
+                correctedTotal.outputPercentileDistribution(out, 1.0);
+            }
+            System.out.println("Latency distribution written to " + file);
+        }
+    }
+
+    // The same words the benchmarks use: letters only, distinct for every n
+    private static String[] generatedWords(int count) {
+        String[] words = new String[count];
+        for (int i = 0; i < count; i++) words[i] = Workload.letters(i) + "word";
+        return words;
+    }
+
+    // Only the headwords are kept, the file is streamed like the server does when loading it
+    private static String[] wordsFrom(Path path) throws IOException {
+        List<String> words = new ArrayList<>();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            JSONTokener tokener = new JSONTokener(reader);
+            if (tokener.nextClean() != '{') throw tokener.syntaxError("A dictionary must start with '{'");
+            if (tokener.nextClean() == '}') return new String[0];
+            tokener.back();
+            while (true) {
+                char quote = tokener.nextClean();
+                if (quote != '"' && quote != '\'') throw tokener.syntaxError("Expected a word");
+                words.add(tokener.nextString(quote));
+                if (tokener.nextClean() != ':') throw tokener.syntaxError("Expected ':' after a word");
+                tokener.nextValue();
+                char next = tokener.nextClean();
+                if (next == '}') break;
+                if (next != ',') throw tokener.syntaxError("Expected ',' or '}'");
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+}
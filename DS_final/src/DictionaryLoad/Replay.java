@@ -0,0 +1,51 @@
+package DictionaryLoad;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import org.json.*;
+
+// Plays back a recorded request log: one JSON request per line, exactly as a client sends it.
+// A line may carry "at", the milliseconds since the recording started, in which case it is sent
+// at that offset (divided by the speed-up); lines without it are paced at the configured rate.
+// Blank lines and lines starting with '#' are skipped. The file is streamed, never held whole.
+final class Replay implements Closeable {
+    private final BufferedReader reader;
+    private final double speed;
+    private long offsetNanos = -1;
+    private long lineNumber;
+
+    Replay(Path path, double speed) throws IOException {
+        this.reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        this.speed = speed;
+    }
+
+    // The next request, or null at the end of the log
+    JSONObject next() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            try {
+                JSONObject request = new JSONObject(line);
+                Object at = request.remove("at");
+                offsetNanos = at instanceof Number ? (long) (((Number) at).doubleValue() * 1_000_000 / speed) : -1;
+                return request;
+            } catch (JSONException e) {
+                System.err.println("Skipping line " + lineNumber + " of the replay log: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    // When the last request should go out, relative to the start of the run; -1 if it has no "at"
+    long offsetNanos() {
+        return offsetNanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
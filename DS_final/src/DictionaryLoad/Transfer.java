@@ -0,0 +1,188 @@
+package DictionaryLoad;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.json.*;
+import DictionaryClient.ServerConnection;
+import DictionaryProtocol.ChunkCodec;
+
+// Bulk copy of a whole dictionary out of or into a server (or router) with the "export" and
+// "import" actions, in chunks so neither end ever holds the full document.
+//
+//   java DictionaryLoad.Transfer export FILE [host] [port] [--name=value ...]
+//   java DictionaryLoad.Transfer import FILE [host] [port] [--name=value ...]
+//
+//   --chunk=N        words per request (1000, at most 10000); a request line is limited to 1 MB
+//   --window=N       import chunks sent ahead of their answers (4)
+//   --compress       gzip the entries of every chunk
+//   --replace        imported words replace the meanings of existing ones instead of failing
+//
+// FILE is in the dictionary.json layout. An export follows the "next" cursor of each answer, so
+// words added or removed while it runs may or may not be in the file. An import streams the file
+// and keeps at most --window chunks unanswered; the words that fail are listed on stderr.
+public class Transfer {
+    private static final int PORT_NUMBER = 9092;
+    private static final int MAX_CHUNK_BYTES = 64 * 1024 * 1024;
+
+    private static final Map<String, String> options = new HashMap<>();
+
+    public static void main(String[] args) {
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+            } else {
+                positional.add(arg);
+            }
+        }
+        String command = positional.size() > 0 ? positional.get(0) : "";
+        if (positional.size() < 2 || !(command.equals("export") || command.equals("import"))) {
+            System.err.println("Usage: java DictionaryLoad.Transfer export|import FILE [host] [port] [--chunk=N] [--window=N] [--compress] [--replace]");
+            return;
+        }
+        Path path = Paths.get(positional.get(1));
+        String host = positional.size() > 2 ? positional.get(2) : "localhost";
+        int port = positional.size() > 3 ? Integer.parseInt(positional.get(3).trim()) : PORT_NUMBER;
+
+        try (ServerConnection connection = new ServerConnection(host, port, false, false)) {
+            if (command.equals("export")) {
+                exportTo(connection, path);
+            } else {
+                importFrom(connection, path);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static int intOption(String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    // One chunk at a time: each request needs the cursor from the answer before
+    private static void exportTo(ServerConnection connection, Path path) throws IOException {
+        long start = System.nanoTime();
+        int chunk = intOption("chunk", 1000);
+        boolean compress = options.containsKey("compress");
+        long words = 0;
+        String after = null;
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write('{');
+            do {
+                JSONObject request = new JSONObject().put("request", "export").put("limit", chunk);
+                if (after != null) request.put("after", after);
+                if (compress) request.put("compress", ChunkCodec.GZIP);
+                JSONObject response = answer(connection, request);
+                JSONObject entries = response.has("data")
+                        ? new JSONObject(ChunkCodec.decompress(response.getString("data"), MAX_CHUNK_BYTES))
+                        : response.getJSONObject("entries");
+                // A JSONObject forgets the order, the chunk is sorted again to keep the file sorted
+                for (String word : new TreeSet<>(entries.keySet())) {
+                    writer.write(words++ == 0 ? "\n  " : ",\n  ");
+                    writer.write(JSONObject.quote(word));
+                    writer.write(": [");
+                    JSONArray meanings = entries.getJSONArray(word);
+                    for (int i = 0; i < meanings.length(); i++) {
+                        if (i > 0) writer.write(", ");
+                        writer.write(JSONObject.quote(meanings.getString(i)));
+                    }
+                    writer.write(']');
+                }
+                after = response.optString("next", null);
+                System.err.printf("\rExported %d words", words);
+            } while (after != null);
+            writer.write("\n}\n");
+        }
+        System.err.println();
+        System.out.printf("Exported %d words to %s in %d ms.%n", words, path, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void importFrom(ServerConnection connection, Path path) throws IOException {
+        long start = System.nanoTime();
+        int chunk = intOption("chunk", 1000);
+        int windowSize = Math.max(1, intOption("window", 4));
+        Semaphore window = new Semaphore(windowSize);
+        // Only touched by the connection's reader thread, which completes every answer
+        long[] counts = new long[2];   // imported, failed
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            JSONTokener tokener = new JSONTokener(reader);
+            if (tokener.nextClean() != '{') throw tokener.syntaxError("A dictionary must start with '{'");
+            JSONObject entries = new JSONObject();
+            char next = tokener.nextClean();
+            while (next != '}') {
+                if (next != '"' && next != '\'') throw tokener.syntaxError("Expected a word");
+                String word = tokener.nextString(next);
+                if (tokener.nextClean() != ':') throw tokener.syntaxError("Expected ':' after a word");
+                entries.put(word, tokener.nextValue());
+                if (entries.length() == chunk) {
+                    sendChunk(connection, entries, window, counts);
+                    entries = new JSONObject();
+                }
+                next = tokener.nextClean();
+                if (next == ',') {
+                    next = tokener.nextClean();
+                } else if (next != '}') {
+                    throw tokener.syntaxError("Expected ',' or '}'");
+                }
+            }
+            if (!entries.isEmpty()) sendChunk(connection, entries, window, counts);
+        }
+        // Every permit back means every chunk was answered
+        window.acquireUninterruptibly(windowSize);
+        System.err.println();
+        System.out.printf("Imported %d words, %d failed, from %s in %d ms.%n", counts[0], counts[1], path,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void sendChunk(ServerConnection connection, JSONObject entries, Semaphore window, long[] counts) {
+        JSONObject request = new JSONObject().put("request", "import")
+                .put("mode", options.containsKey("replace") ? "replace" : "add");
+        if (options.containsKey("compress")) {
+            request.put("compress", ChunkCodec.GZIP).put("data", ChunkCodec.compress(entries.toString()));
+        } else {
+            request.put("entries", entries);
+        }
+        int size = entries.length();
+        window.acquireUninterruptibly();
+        connection.send(request).whenComplete((response, error) -> {
+            if (response == null || !"success".equals(response.optString("status"))) {
+                counts[1] += size;
+                System.err.printf("%nChunk of %d words failed: %s%n", size,
+                        response != null ? response.optString("message") : error != null ? error.getMessage() : "connection closed");
+            } else {
+                counts[0] += response.optLong("imported");
+                counts[1] += response.optLong("failed");
+                JSONArray errors = response.optJSONArray("errors");
+                int listed = errors == null ? 0 : errors.length();
+                for (int i = 0; i < listed; i++) {
+                    JSONObject failure = errors.getJSONObject(i);
+                    System.err.printf("%n%s: %s", failure.optString("word"), failure.optString("message"));
+                }
+                if (response.optLong("failed") > listed) {
+                    System.err.printf("%n... and %d more", response.optLong("failed") - listed);
+                }
+                // The progress line must not overwrite the last error
+                if (response.optLong("failed") > 0) System.err.println();
+            }
+            System.err.printf("\rImported %d words, %d failed", counts[0], counts[1]);
+            window.release();
+        });
+    }
+
+    private static JSONObject answer(ServerConnection connection, JSONObject request) throws IOException {
+        JSONObject response;
+        try {
+            response = connection.send(request).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("No answer from the server", e);
+        }
+        if (response == null) throw new IOException("The server closed the connection");
+        if (!"success".equals(response.optString("status"))) throw new IOException(response.optString("message"));
+        return response;
+    }
+}
@@ -0,0 +1,126 @@
+package DictionaryLoad;
+
+import java.util.*;
+import org.json.*;
+
+// Generates the requests of a synthetic run: each one is drawn from the configured mix, and the
+// words it touches are drawn from the key space with Zipfian popularity, so a few words are hot
+// and the long tail is cold, as in real traffic. Used from the one scheduling thread only.
+//
+// Mutations are kept from wearing the dictionary down: add invents new words and remove takes
+// those back first, updatemeaning rewrites meanings that addmeaning put there. When there is
+// nothing of ours to remove or update, the request is still sent and simply fails.
+final class Workload {
+    enum Operation {
+        QUERY("query"), ADD("add"), REMOVE("remove"), ADD_MEANING("addmeaning"), UPDATE_MEANING("updatemeaning");
+
+        final String request;
+
+        Operation(String request) {
+            this.request = request;
+        }
+    }
+
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final String[] words;
+    // Cumulative Zipf probabilities by popularity rank, null for uniform popularity
+    private final double[] cdf;
+    private final String freshPrefix;
+    private long freshWords;
+    private long freshMeanings;
+    private final Deque<String> added = new ArrayDeque<>();
+    private final Deque<String[]> addedMeanings = new ArrayDeque<>();
+
+    // `mix` is "operation:weight,...", `skew` the Zipf exponent (0 for uniform)
+    Workload(String mix, String[] words, double skew, long seed) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split(":");
+            Operation operation = null;
+            for (Operation candidate : Operation.values()) {
+                if (candidate.request.equalsIgnoreCase(pair[0].trim())) operation = candidate;
+            }
+            if (operation == null || pair.length != 2) throw new IllegalArgumentException("Bad mix entry " + part);
+            weights.put(operation, Integer.parseInt(pair[1].trim()));
+        }
+        operations = weights.keySet().toArray(new Operation[0]);
+        cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += weights.get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+        if (total <= 0) throw new IllegalArgumentException("The mix has no weight");
+        if (words.length == 0) throw new IllegalArgumentException("The key space is empty");
+
+        // Popularity must not follow alphabetical order, or the hot words would all sit together
+        Random random = new Random(seed);
+        this.words = words.clone();
+        Collections.shuffle(Arrays.asList(this.words), random);
+        cdf = skew > 0 ? zipf(this.words.length, skew) : null;
+        freshPrefix = "load" + letters(random.nextInt(Integer.MAX_VALUE)) + "x";
+    }
+
+    JSONObject next(SplittableRandom random) {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int at = 0;
+        while (cumulativeWeights[at] <= pick) at++;
+        JSONObject request = new JSONObject().put("request", operations[at].request);
+        switch (operations[at]) {
+            case QUERY:
+                return request.put("word", word(random));
+            case ADD: {
+                String word = freshPrefix + letters(freshWords++);
+                added.add(word);
+                return request.put("word", word).put("meanings", new JSONArray().put("added by the load generator"));
+            }
+            case REMOVE: {
+                String word = added.poll();
+                return request.put("word", word != null ? word : freshPrefix + letters(freshWords++));
+            }
+            case ADD_MEANING: {
+                String word = word(random);
+                String meaning = "load generator meaning " + freshMeanings++;
+                addedMeanings.add(new String[]{word, meaning});
+                return request.put("word", word).put("meaning", meaning);
+            }
+            default: {
+                String[] old = addedMeanings.poll();
+                if (old == null) old = new String[]{word(random), "load generator meaning -1"};
+                String meaning = "load generator meaning " + freshMeanings++;
+                addedMeanings.add(new String[]{old[0], meaning});
+                return request.put("word", old[0]).put("old", old[1]).put("new", meaning);
+            }
+        }
+    }
+
+    private String word(SplittableRandom random) {
+        if (cdf == null) return words[random.nextInt(words.length)];
+        int rank = Arrays.binarySearch(cdf, random.nextDouble());
+        if (rank < 0) rank = -rank - 1;
+        return words[Math.min(rank, words.length - 1)];
+    }
+
+    // P(rank k) proportional to 1 / (k + 1)^skew
+    private static double[] zipf(int n, double skew) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, skew);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) cdf[k] /= sum;
+        return cdf;
+    }
+
+    // The server only takes words made of letters, so numbers are spelled in base 26
+    static String letters(long n) {
+        StringBuilder word = new StringBuilder();
+        do {
+            word.append((char) ('a' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return word.toString();
+    }
+}
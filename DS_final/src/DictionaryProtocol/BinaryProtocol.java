@@ -0,0 +1,138 @@
+package DictionaryProtocol;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Compact framing offered next to the newline-delimited JSON protocol. A client opts in by
+// sending the HANDSHAKE byte as the very first byte of the connection (a JSON request always
+// starts with '{'), and the server echoes it back before the first frame.
+//
+// Every frame, in both directions, is
+//   u8 code | u32 body length | body
+// and the body is
+//   u32 id | u16 field count | field count x (u32 byte length | UTF-8 bytes)
+//
+// Request codes are the opcodes below with fields [word, ...]: add carries the meanings,
+// addmeaning the new meaning, updatemeaning the old and the new meaning, prefix an optional
+// decimal limit. Search puts the terms where the word goes, then "all"/"any" and a limit.
+// Reply codes are OK or ERROR with fields [word, message, meanings...]. After SUBSCRIBE the
+// server may also send INVALIDATE frames (id 0, fields [word]) between replies. STATS takes no
+// fields and is answered with the server's metrics as one JSON text in the first meaning slot.
+public final class BinaryProtocol {
+    public static final int HANDSHAKE = 0xB1;
+
+    public static final byte QUERY = 1;
+    public static final byte ADD = 2;
+    public static final byte REMOVE = 3;
+    public static final byte ADD_MEANING = 4;
+    public static final byte UPDATE_MEANING = 5;
+    public static final byte DISCONNECT = 6;
+    public static final byte PREFIX = 7;
+    public static final byte SEARCH = 8;
+    public static final byte SUBSCRIBE = 9;
+    public static final byte STATS = 10;
+
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+    public static final byte INVALIDATE = 2;
+
+    // Frames larger than this are treated as a broken stream
+    public static final int MAX_BODY_BYTES = 1024 * 1024;
+    public static final int HEADER_BYTES = 5;
+
+    private BinaryProtocol() {
+    }
+
+    public static final class Frame {
+        public final byte code;
+        public final int id;
+        public final String[] fields;
+
+        public Frame(byte code, int id, String[] fields) {
+            this.code = code;
+            this.id = id;
+            this.fields = fields;
+        }
+
+        public String field(int index) {
+            return index < fields.length ? fields[index] : null;
+        }
+    }
+
+    public static byte[] encode(byte code, int id, String... fields) {
+        byte[][] encoded = new byte[fields.length][];
+        int bodyLength = 6;
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+            bodyLength += 4 + encoded[i].length;
+        }
+        byte[] frame = new byte[HEADER_BYTES + bodyLength];
+        int p = 0;
+        frame[p++] = code;
+        p = putInt(frame, p, bodyLength);
+        p = putInt(frame, p, id);
+        frame[p++] = (byte) (fields.length >>> 8);
+        frame[p++] = (byte) fields.length;
+        for (byte[] field : encoded) {
+            p = putInt(frame, p, field.length);
+            System.arraycopy(field, 0, frame, p, field.length);
+            p += field.length;
+        }
+        return frame;
+    }
+
+    // The same frame answering request `id`; shares the array when the id already matches
+    public static byte[] withId(byte[] frame, int id) {
+        if (getInt(frame, HEADER_BYTES) == id) return frame;
+        byte[] copy = frame.clone();
+        putInt(copy, HEADER_BYTES, id);
+        return copy;
+    }
+
+    public static void write(OutputStream out, byte code, int id, String... fields) throws IOException {
+        out.write(encode(code, id, fields));
+        out.flush();
+    }
+
+    // Returns null on a clean end of stream between frames
+    public static Frame read(DataInputStream in) throws IOException {
+        int code = in.read();
+        if (code < 0) return null;
+        int length = in.readInt();
+        if (length < 6 || length > MAX_BODY_BYTES) throw new IOException("Bad frame length " + length);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return decode((byte) code, body, 0, length);
+    }
+
+    public static Frame decode(byte code, byte[] body, int offset, int length) throws IOException {
+        int end = offset + length;
+        int p = offset;
+        int id = getInt(body, p);
+        p += 4;
+        int count = ((body[p] & 0xFF) << 8) | (body[p + 1] & 0xFF);
+        p += 2;
+        String[] fields = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (p + 4 > end) throw new IOException("Truncated frame");
+            int fieldLength = getInt(body, p);
+            p += 4;
+            if (fieldLength < 0 || p + fieldLength > end) throw new IOException("Truncated frame");
+            fields[i] = new String(body, p, fieldLength, StandardCharsets.UTF_8);
+            p += fieldLength;
+        }
+        return new Frame(code, id, fields);
+    }
+
+    public static int getInt(byte[] bytes, int p) {
+        return ((bytes[p] & 0xFF) << 24) | ((bytes[p + 1] & 0xFF) << 16) | ((bytes[p + 2] & 0xFF) << 8) | (bytes[p + 3] & 0xFF);
+    }
+
+    private static int putInt(byte[] bytes, int p, int value) {
+        bytes[p] = (byte) (value >>> 24);
+        bytes[p + 1] = (byte) (value >>> 16);
+        bytes[p + 2] = (byte) (value >>> 8);
+        bytes[p + 3] = (byte) value;
+        return p + 4;
+    }
+}
@@ -0,0 +1,48 @@
+package DictionaryProtocol;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Optional compression of the entries carried by "import" and "export" chunks. A compressed
+// chunk has "compress":"gzip" and a "data" field holding the base64 of the gzipped JSON text
+// that would otherwise be its "entries" object, so it still fits on one request line.
+public final class ChunkCodec {
+    public static final String GZIP = "gzip";
+
+    private ChunkCodec() {
+    }
+
+    public static String compress(String json) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length() / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(json.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Only a memory stream underneath
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    // Refuses to inflate past maxBytes, so a small chunk cannot expand into an unbounded one
+    public static String decompress(String data, int maxBytes) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = Base64.getDecoder().decode(data);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Chunk data is not base64");
+        }
+        ByteArrayOutputStream json = new ByteArrayOutputStream(compressed.length * 4);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                if (json.size() + n > maxBytes) throw new IOException("Chunk expands past " + maxBytes + " bytes");
+                json.write(buffer, 0, n);
+            }
+        }
+        return json.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,92 @@
+package DictionaryProtocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Consistent hashing of words onto the nodes ("host:port") of a partitioned deployment. Every
+// node owns a number of virtual points on a 64-bit ring and a word belongs to the first point at
+// or after its hash, so adding a node only takes over the ranges just below its own points and
+// every other word stays where it was. Shared by the router and the servers, which must agree
+// on the owner of every word: both hash the lower-cased word, as the server stores it.
+public final class HashRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final List<String> nodes;
+    private final int virtualNodes;
+    // Points in ascending order and the node owning each
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) throw new IllegalArgumentException("A ring needs at least one node");
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(nodes)));
+        this.virtualNodes = Math.max(1, virtualNodes);
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String node : this.nodes) {
+            for (int i = 0; i < this.virtualNodes; i++) {
+                // On the rare collision the smaller name wins, so every process builds the same ring
+                ring.merge(hash(node + "#" + i), node, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+        points = new long[ring.size()];
+        owners = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, String> point : ring.entrySet()) {
+            points[i] = point.getKey();
+            owners[i++] = point.getValue();
+        }
+    }
+
+    // "host:port,host:port,..."
+    public static HashRing parse(String nodes, int virtualNodes) {
+        List<String> list = new ArrayList<>();
+        for (String node : nodes.split(",")) {
+            if (!node.trim().isEmpty()) list.add(node.trim());
+        }
+        return new HashRing(list, virtualNodes);
+    }
+
+    public String owner(String word) {
+        int at = Arrays.binarySearch(points, hash(word.toLowerCase()));
+        if (at < 0) at = -at - 1;
+        return owners[at == points.length ? 0 : at];
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public int virtualNodes() {
+        return virtualNodes;
+    }
+
+    public boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    public HashRing with(String node) {
+        List<String> grown = new ArrayList<>(nodes);
+        grown.add(node);
+        return new HashRing(grown, virtualNodes);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", nodes);
+    }
+
+    // 64-bit FNV-1a over the UTF-8 bytes, then the murmur3 finalizer to spread similar names
+    static long hash(String text) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93e63b2c45bL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
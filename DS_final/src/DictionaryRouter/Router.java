@@ -0,0 +1,588 @@
+package DictionaryRouter;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import org.json.*;
+import DictionaryClient.ServerConnection;
+import DictionaryProtocol.ChunkCodec;
+import DictionaryProtocol.HashRing;
+
+// Thin proxy in front of a partitioned deployment. Clients speak the server's JSON line protocol
+// to it, and it spreads the words over several servers by consistent hashing (HashRing).
+//
+//   java DictionaryRouter.Router [port] --nodes=host:port,host:port,... [--name=value ...]
+//
+//   --nodes=...             the servers holding the dictionary (required)
+//   --vnodes=N              points per node on the hash ring (128)
+//   --shard-connections=N   pipelined connections to each node (4); a client always uses the same one
+//
+// Word requests go to the node owning the word. Prefix, search, stats and export ask every node
+// and merge the answers, and a batch or an import chunk is split by owner with the parts running
+// in parallel. A node
+// answers code "moved" for a word it has handed off, and the request is retried at the owner
+// it names.
+//
+// {"request":"addnode","node":"host:port"} grows the ring. Every node is sent the new ring and
+// streams the words the new node takes over straight to it (see DictionaryServer.ShardHandoff)
+// while still serving them; the router switches once all of them are done. Nodes are sent the
+// ring at startup and after a reconnect as well, so a node holding a whole dictionary hands the
+// others their share. The ring lives on this command line: add the node to --nodes as well.
+// Subscriptions are not offered, so clients keep their word cache off.
+public class Router {
+    private static final int PORT_NUMBER = 9091;
+    private static final int DEFAULT_PREFIX_LIMIT = 10;
+    private static final int MAX_PREFIX_LIMIT = 100;
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_SEARCH_LIMIT = 1000;
+    private static final int DEFAULT_CHUNK_ENTRIES = 1000;
+    private static final int MAX_CHUNK_ENTRIES = 10000;
+    private static final int MAX_CHUNK_BYTES = 64 * 1024 * 1024;
+    private static final int MAX_IMPORT_ERRORS = 100;
+    // A word is only followed this many times from node to node
+    private static final int MOVED_RETRIES = 2;
+    private static final String DISCONNECTED = "{\"status\":\"success\",\"message\":\"Disconnected.\"}";
+    // Put after a client's last answer to end its writer
+    private static final CompletableFuture<JSONObject> END = new CompletableFuture<>();
+
+    private static final Map<String, String> options = new HashMap<>();
+
+    private volatile HashRing ring;
+    private final int lanes;
+    private final ConcurrentHashMap<String, Node> nodes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLane = new AtomicInteger();
+    private final ReentrantLock reshardLock = new ReentrantLock();
+
+    Router(HashRing ring, int lanes) {
+        this.ring = ring;
+        this.lanes = lanes;
+    }
+
+    public static void main(String[] args) {
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+            } else {
+                positional.add(arg);
+            }
+        }
+        if (!options.containsKey("nodes")) {
+            System.err.println("Usage: Router [port] --nodes=host:port,host:port,... [--vnodes=N] [--shard-connections=N]");
+            System.exit(1);
+        }
+        int port = positional.isEmpty() ? PORT_NUMBER : Integer.parseInt(positional.get(0).trim());
+        HashRing ring = HashRing.parse(options.get("nodes"), intOption("vnodes", HashRing.DEFAULT_VIRTUAL_NODES));
+        Router router = new Router(ring, Math.max(1, intOption("shard-connections", 4)));
+        router.announceAll();
+        router.serve(port);
+    }
+
+    private static int intOption(String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for --" + name + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    // Tell every node the ring before taking clients, and wait for any handoffs it starts. A node
+    // that could not be told is told on the first connection to it.
+    private void announceAll() {
+        HashRing current = ring;
+        Map<String, CompletableFuture<JSONObject>> answers = new LinkedHashMap<>();
+        for (String node : current.nodes()) answers.put(node, announce(node, current));
+        answers.forEach((node, answer) -> {
+            JSONObject response = answer.join();
+            if (!"success".equals(response.optString("status"))) node(node).unannounced();
+            System.out.println(node + ": " + response.optString("message"));
+        });
+    }
+
+    private void serve(int port) {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("Router is listening on port " + port + " for " + ring.nodes().size() + " nodes");
+            while (true) {
+                Socket client = server.accept();
+                pool.execute(() -> handleClient(client));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Requests are read and routed as they come; a writer thread sends the answers back in the
+    // same order, so a client can pipeline through the router as it would to a server
+    private void handleClient(Socket client) {
+        int lane = Math.floorMod(nextLane.getAndIncrement(), lanes);
+        BlockingQueue<CompletableFuture<JSONObject>> answers = new LinkedBlockingQueue<>();
+        Thread writer = new Thread(() -> writeAnswers(client, answers), "router-writer");
+        writer.setDaemon(true);
+        writer.start();
+        try {
+            BufferedReader input = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = input.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                JSONObject request;
+                try {
+                    request = new JSONObject(line);
+                } catch (JSONException e) {
+                    answers.add(CompletableFuture.completedFuture(error(null, "Malformed request.")));
+                    continue;
+                }
+                Object id = request.opt("id");
+                if ("disconnect".equalsIgnoreCase(request.optString("request"))) {
+                    answers.add(CompletableFuture.completedFuture(withId(new JSONObject(DISCONNECTED), id)));
+                    break;
+                }
+                answers.add(route(request, lane).thenApply(response -> withId(response, id)));
+            }
+        } catch (IOException e) {
+            // Client went away
+        } finally {
+            answers.add(END);
+        }
+    }
+
+    private static void writeAnswers(Socket client, BlockingQueue<CompletableFuture<JSONObject>> answers) {
+        try (Socket socket = client;
+             Writer output = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            while (true) {
+                CompletableFuture<JSONObject> answer = answers.take();
+                if (answer == END) return;
+                JSONObject response;
+                try {
+                    response = answer.join();
+                } catch (CompletionException e) {
+                    e.printStackTrace();
+                    response = error(null, "Request failed: " + e.getCause().getMessage());
+                }
+                output.write(response.toString());
+                output.write('\n');
+                // Answers to pipelined requests go out together
+                if (answers.isEmpty()) output.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            // Client went away
+        }
+    }
+
+    private static JSONObject withId(JSONObject response, Object id) {
+        if (id != null && !response.has("id")) response.put("id", id);
+        return response;
+    }
+
+    CompletableFuture<JSONObject> route(JSONObject request, int lane) {
+        String action = request.optString("request").toLowerCase();
+        if (ownedByWord(action)) return sendToOwner(request, lane);
+        switch (action) {
+            case "prefix":
+                return prefix(request, lane);
+            case "search":
+                return search(request, lane);
+            case "batch":
+                return batch(request, lane);
+            case "stats":
+                return stats(lane);
+            case "import":
+                return importChunk(request, lane);
+            case "export":
+                return exportChunk(request, lane);
+            case "ring":
+                return CompletableFuture.completedFuture(ringJson());
+            case "addnode":
+                return CompletableFuture.supplyAsync(() -> addNode(request.optString("node")));
+            case "subscribe":
+                return CompletableFuture.completedFuture(error(null, "Subscriptions are not available through the router."));
+            default:
+                return CompletableFuture.completedFuture(error(null, "Invalid request type."));
+        }
+    }
+
+    private static boolean ownedByWord(String action) {
+        switch (action) {
+            case "query":
+            case "add":
+            case "remove":
+            case "addmeaning":
+            case "updatemeaning":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private CompletableFuture<JSONObject> sendToOwner(JSONObject request, int lane) {
+        return send(ring.owner(request.optString("word")), request, lane, MOVED_RETRIES);
+    }
+
+    // Follows "moved" answers to the node they name
+    private CompletableFuture<JSONObject> send(String node, JSONObject request, int lane, int retries) {
+        return send(node, request, lane).thenCompose(response -> {
+            if (retries > 0 && "moved".equals(response.optString("code")) && response.has("owner")) {
+                return send(response.getString("owner"), request, lane, retries - 1);
+            }
+            return CompletableFuture.completedFuture(response);
+        });
+    }
+
+    // Never completes exceptionally: an unreachable node is answered with an error
+    private CompletableFuture<JSONObject> send(String address, JSONObject request, int lane) {
+        Node node = node(address);
+        ServerConnection connection;
+        try {
+            connection = node.connection(lane);
+        } catch (IOException e) {
+            return CompletableFuture.completedFuture(unavailable(address, request));
+        }
+        return connection.send(request).handle((response, error) -> {
+            if (response != null) return response;
+            node.broken(lane, connection);
+            return unavailable(address, request);
+        });
+    }
+
+    private Node node(String address) {
+        return nodes.computeIfAbsent(address, Node::new);
+    }
+
+    private static JSONObject unavailable(String node, JSONObject request) {
+        JSONObject response = error(request.has("word") ? request.optString("word").toLowerCase() : null,
+                "Node " + node + " is not reachable.");
+        return response.put("code", "unavailable");
+    }
+
+    private static JSONObject error(String word, String message) {
+        JSONObject response = new JSONObject();
+        if (word != null) response.put("word", word);
+        return response.put("status", "error").put("message", message);
+    }
+
+    // The same request to every node, answers in ring order
+    private CompletableFuture<List<JSONObject>> everyNode(JSONObject request, int lane) {
+        List<CompletableFuture<JSONObject>> answers = new ArrayList<>();
+        for (String node : ring.nodes()) answers.add(send(node, request, lane));
+        return CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<JSONObject> responses = new ArrayList<>(answers.size());
+            for (CompletableFuture<JSONObject> answer : answers) responses.add(answer.join());
+            return responses;
+        });
+    }
+
+    private static JSONObject firstError(List<JSONObject> responses) {
+        for (JSONObject response : responses) {
+            if (!"success".equals(response.optString("status"))) return response;
+        }
+        return null;
+    }
+
+    // Each node's first words in order, merged and cut to the limit again
+    private CompletableFuture<JSONObject> prefix(JSONObject request, int lane) {
+        int limit = Math.max(1, Math.min(request.optInt("limit", DEFAULT_PREFIX_LIMIT), MAX_PREFIX_LIMIT));
+        return everyNode(request, lane).thenApply(responses -> {
+            JSONObject failed = firstError(responses);
+            if (failed != null) return failed;
+            TreeSet<String> words = new TreeSet<>();
+            for (JSONObject response : responses) {
+                JSONArray found = response.optJSONArray("words");
+                for (int i = 0; found != null && i < found.length(); i++) words.add(found.getString(i));
+            }
+            List<String> first = new ArrayList<>(limit);
+            for (String word : words) {
+                if (first.size() == limit) break;
+                first.add(word);
+            }
+            return new JSONObject().put("word", request.optString("word").toLowerCase()).put("status", "success")
+                    .put("words", new JSONArray(first));
+        });
+    }
+
+    private CompletableFuture<JSONObject> search(JSONObject request, int lane) {
+        int limit = Math.max(1, Math.min(request.optInt("limit", DEFAULT_SEARCH_LIMIT), MAX_SEARCH_LIMIT));
+        return everyNode(request, lane).thenApply(responses -> {
+            JSONObject failed = firstError(responses);
+            if (failed != null) return failed;
+            Set<String> words = new LinkedHashSet<>();
+            for (JSONObject response : responses) {
+                JSONArray found = response.optJSONArray("words");
+                for (int i = 0; found != null && i < found.length() && words.size() < limit; i++) words.add(found.getString(i));
+            }
+            return new JSONObject().put("status", "success").put("words", new JSONArray(words));
+        });
+    }
+
+    private CompletableFuture<JSONObject> stats(int lane) {
+        return everyNode(new JSONObject().put("request", "stats"), lane).thenApply(responses -> {
+            JSONObject perNode = new JSONObject();
+            List<String> order = ring.nodes();
+            for (int i = 0; i < responses.size() && i < order.size(); i++) {
+                JSONObject response = responses.get(i);
+                perNode.put(order.get(i), response.has("stats") ? response.get("stats") : response);
+            }
+            return new JSONObject().put("status", "success")
+                    .put("stats", new JSONObject().put("ring", ringJson().getJSONObject("ring")).put("nodes", perNode));
+        });
+    }
+
+    private JSONObject ringJson() {
+        HashRing current = ring;
+        return new JSONObject().put("status", "success").put("ring",
+                new JSONObject().put("nodes", new JSONArray(current.nodes())).put("vnodes", current.virtualNodes()));
+    }
+
+    // Ops on words go to their owners as one smaller batch per node, all nodes at once; the rest
+    // are routed one by one. Results come back in the order of the ops, but ops only run in
+    // order with the others sent to the same node.
+    private CompletableFuture<JSONObject> batch(JSONObject request, int lane) {
+        JSONArray ops = request.optJSONArray("ops");
+        if (ops == null) return CompletableFuture.completedFuture(error(null, "Batch needs an ops array."));
+        List<CompletableFuture<JSONObject>> results = new ArrayList<>(ops.length());
+        Map<String, List<Integer>> byOwner = new LinkedHashMap<>();
+        for (int i = 0; i < ops.length(); i++) {
+            JSONObject op = ops.optJSONObject(i);
+            String action = op == null ? "" : op.optString("request").toLowerCase();
+            results.add(null);
+            if (ownedByWord(action)) {
+                byOwner.computeIfAbsent(ring.owner(op.optString("word")), node -> new ArrayList<>()).add(i);
+            } else if (op == null || action.equals("batch") || action.equals("disconnect") || action.equals("addnode")) {
+                results.set(i, CompletableFuture.completedFuture(error(null, "Invalid request type.")));
+            } else {
+                results.set(i, route(op, lane));
+            }
+        }
+        byOwner.forEach((node, indexes) -> {
+            JSONArray part = new JSONArray();
+            for (int i : indexes) part.put(ops.getJSONObject(i));
+            CompletableFuture<JSONObject> answer = send(node, new JSONObject().put("request", "batch").put("ops", part), lane);
+            for (int k = 0; k < indexes.size(); k++) {
+                int position = k;
+                JSONObject op = ops.getJSONObject(indexes.get(k));
+                results.set(indexes.get(k), answer.thenCompose(response -> {
+                    JSONArray partResults = response.optJSONArray("results");
+                    JSONObject result = partResults == null ? response : partResults.getJSONObject(position);
+                    if ("moved".equals(result.optString("code")) && result.has("owner")) {
+                        return send(result.getString("owner"), op, lane, MOVED_RETRIES - 1);
+                    }
+                    return CompletableFuture.completedFuture(result);
+                }));
+            }
+        });
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            JSONArray merged = new JSONArray();
+            for (CompletableFuture<JSONObject> result : results) merged.put(result.join());
+            return new JSONObject().put("status", "success").put("results", merged);
+        });
+    }
+
+    // The entries split by owner, each part imported in one request to its node
+    private CompletableFuture<JSONObject> importChunk(JSONObject request, int lane) {
+        JSONObject entries;
+        try {
+            String compress = request.optString("compress");
+            if (compress.isEmpty()) {
+                entries = request.optJSONObject("entries");
+            } else if (compress.equalsIgnoreCase(ChunkCodec.GZIP)) {
+                entries = new JSONObject(ChunkCodec.decompress(request.optString("data"), MAX_CHUNK_BYTES));
+            } else {
+                throw new IOException("unsupported compression " + compress);
+            }
+        } catch (IOException | JSONException e) {
+            return CompletableFuture.completedFuture(error(null, "Bad import chunk: " + e.getMessage()));
+        }
+        if (entries == null) return CompletableFuture.completedFuture(error(null, "Import needs entries."));
+        Map<String, JSONObject> byOwner = new LinkedHashMap<>();
+        for (String word : entries.keySet()) {
+            byOwner.computeIfAbsent(ring.owner(word), node -> new JSONObject()).put(word, entries.get(word));
+        }
+        List<CompletableFuture<JSONObject>> answers = new ArrayList<>();
+        byOwner.forEach((node, part) -> {
+            JSONObject forward = new JSONObject().put("request", "import").put("mode", request.optString("mode", "add"));
+            if (request.has("compress")) {
+                forward.put("compress", ChunkCodec.GZIP).put("data", ChunkCodec.compress(part.toString()));
+            } else {
+                forward.put("entries", part);
+            }
+            answers.add(send(node, forward, lane));
+        });
+        return CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            int imported = 0;
+            int failed = 0;
+            JSONArray errors = new JSONArray();
+            int i = 0;
+            for (JSONObject part : byOwner.values()) {
+                JSONObject response = answers.get(i++).join();
+                if (!"success".equals(response.optString("status"))) {
+                    // The whole part was refused
+                    for (String word : part.keySet()) {
+                        if (failed++ < MAX_IMPORT_ERRORS) {
+                            errors.put(new JSONObject().put("word", word).put("message", response.optString("message")));
+                        }
+                    }
+                    continue;
+                }
+                imported += response.optInt("imported");
+                failed += response.optInt("failed");
+                JSONArray partErrors = response.optJSONArray("errors");
+                for (int k = 0; partErrors != null && k < partErrors.length() && errors.length() < MAX_IMPORT_ERRORS; k++) {
+                    errors.put(partErrors.get(k));
+                }
+            }
+            return new JSONObject().put("status", "success").put("imported", imported).put("failed", failed)
+                    .put("errors", errors);
+        });
+    }
+
+    // Nodes hold disjoint words, so the next chunk is the first `limit` of their next chunks
+    // merged; more remain if any node had more or the merge had to be cut
+    private CompletableFuture<JSONObject> exportChunk(JSONObject request, int lane) {
+        int limit = Math.max(1, Math.min(request.optInt("limit", DEFAULT_CHUNK_ENTRIES), MAX_CHUNK_ENTRIES));
+        JSONObject forward = new JSONObject().put("request", "export").put("limit", limit);
+        if (request.has("after")) forward.put("after", request.optString("after"));
+        return everyNode(forward, lane).thenApply(responses -> {
+            JSONObject failed = firstError(responses);
+            if (failed != null) return failed;
+            TreeMap<String, Object> merged = new TreeMap<>();
+            boolean more = false;
+            for (JSONObject response : responses) {
+                JSONObject entries = response.optJSONObject("entries");
+                if (entries != null) {
+                    for (String word : entries.keySet()) merged.put(word, entries.get(word));
+                }
+                more |= response.has("next");
+            }
+            JSONObject entries = new JSONObject();
+            String last = null;
+            for (Map.Entry<String, Object> entry : merged.entrySet()) {
+                if (entries.length() == limit) {
+                    more = true;
+                    break;
+                }
+                entries.put(entry.getKey(), entry.getValue());
+                last = entry.getKey();
+            }
+            JSONObject response = new JSONObject().put("status", "success").put("count", entries.length());
+            if (more && last != null) response.put("next", last);
+            if (ChunkCodec.GZIP.equalsIgnoreCase(request.optString("compress"))) {
+                return response.put("compress", ChunkCodec.GZIP).put("data", ChunkCodec.compress(entries.toString()));
+            }
+            return response.put("entries", entries);
+        });
+    }
+
+    // Send every node the grown ring, the new node first so it knows the words coming to it are
+    // its own. The router only switches once every node handed its share over; after a failure
+    // the old ring stays (nodes that did switch answer "moved") and addnode can be sent again.
+    private JSONObject addNode(String address) {
+        if (address.lastIndexOf(':') < 0) return error(null, "A node is given as host:port.");
+        reshardLock.lock();
+        try {
+            HashRing current = ring;
+            if (current.contains(address)) return error(null, "Node " + address + " is already in the ring.");
+            HashRing grown = current.with(address);
+            long start = System.nanoTime();
+            JSONObject joined = announce(address, grown).join();
+            if (!"success".equals(joined.optString("status"))) return joined;
+            Map<String, CompletableFuture<JSONObject>> answers = new LinkedHashMap<>();
+            for (String node : current.nodes()) answers.put(node, announce(node, grown));
+            int moved = 0;
+            List<String> failed = new ArrayList<>();
+            for (Map.Entry<String, CompletableFuture<JSONObject>> answer : answers.entrySet()) {
+                JSONObject response = answer.getValue().join();
+                if ("success".equals(response.optString("status"))) {
+                    moved += response.optInt("moved");
+                } else {
+                    failed.add(answer.getKey() + ": " + response.optString("message"));
+                }
+            }
+            if (!failed.isEmpty()) return error(null, "Ring not changed, handoff failed on " + String.join("; ", failed));
+            ring = grown;
+            System.out.printf("Added %s to the ring, %d words moved in %d ms.%n", address, moved,
+                    (System.nanoTime() - start) / 1_000_000);
+            return new JSONObject().put("status", "success").put("message", "Node added, " + moved + " words moved.")
+                    .put("moved", moved).put("nodes", new JSONArray(grown.nodes()));
+        } finally {
+            reshardLock.unlock();
+        }
+    }
+
+    // The ring request runs the node's handoff, so it gets a connection of its own rather than
+    // holding up a lane behind it
+    private CompletableFuture<JSONObject> announce(String address, HashRing ring) {
+        JSONObject request = new JSONObject().put("request", "ring").put("node", address)
+                .put("nodes", ring.toString()).put("vnodes", ring.virtualNodes());
+        ServerConnection connection;
+        try {
+            connection = connect(address);
+        } catch (IOException e) {
+            return CompletableFuture.completedFuture(unavailable(address, request));
+        }
+        return connection.send(request).handle((response, error) -> {
+            connection.close();
+            return response != null ? response : unavailable(address, request);
+        });
+    }
+
+    private static ServerConnection connect(String address) throws IOException {
+        int colon = address.lastIndexOf(':');
+        try {
+            return new ServerConnection(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1).trim()), false, false);
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new IOException("Node " + address + " is not host:port");
+        }
+    }
+
+    // One server: a few pipelined connections, opened on first use and again after one breaks.
+    // A node that was unreachable is sent the ring again once it is back, as it may have restarted.
+    private final class Node {
+        private final String address;
+        private final ServerConnection[] connections = new ServerConnection[lanes];
+        private boolean lost;
+
+        Node(String address) {
+            this.address = address;
+        }
+
+        synchronized ServerConnection connection(int lane) throws IOException {
+            if (connections[lane] == null) {
+                try {
+                    connections[lane] = connect(address);
+                } catch (IOException e) {
+                    lost = true;
+                    throw e;
+                }
+                if (lost) {
+                    lost = false;
+                    HashRing current = ring;
+                    if (current.contains(address)) announce(address, current);
+                }
+            }
+            return connections[lane];
+        }
+
+        // One broken connection means the node went away, so the other lanes reconnect as well
+        synchronized void broken(int lane, ServerConnection connection) {
+            if (connections[lane] != connection) return;
+            for (int i = 0; i < connections.length; i++) {
+                if (connections[i] != null) connections[i].close();
+                connections[i] = null;
+            }
+            lost = true;
+        }
+
+        synchronized void unannounced() {
+            lost = true;
+        }
+    }
+}
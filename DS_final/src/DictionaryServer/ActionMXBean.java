@@ -0,0 +1,18 @@
+package DictionaryServer;
+
+// One request type over JMX, registered as DictionaryServer:type=Action,name=<request>; see Metrics
+public interface ActionMXBean {
+    long getCount();
+
+    long getErrors();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
@@ -0,0 +1,332 @@
+package DictionaryServer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+// The words and their meanings. Each meaning list is an immutable array that is replaced, never
+// changed, so readers get a consistent list without locking. Every mutation is one compute()
+// on the word's entry: the check, the change and the index updates happen together while only
+// that word's bin is locked, so writers to different words never wait for each other and two
+// writers to the same word can no longer interleave between checking and changing.
+//
+// snapshot() gives checkpoints and new replicas a point-in-time View in O(1). Arrays are never
+// changed, so a view only has to keep the array a word had when it is first changed after the
+// view was taken; writers carry on at full speed and only the words they touch meanwhile cost
+// anything, once for each view that is open.
+//
+// With segments attached, the map is only an overlay of recent changes on top of the
+// memory-mapped Segments holding the bulk of the words; a removed segment word is covered by a
+// TOMBSTONE. compact() merges the overlay into fresh segments and drops what they now hold.
+final class DictionaryStore {
+    enum Outcome { DONE, NOT_FOUND, DUPLICATE, MEANING_EXISTS, OLD_MEANING_NOT_FOUND }
+
+    // Told about every change inside the atomic step: word, meanings before, meanings after,
+    // with null standing for "not in the dictionary"
+    interface Listener {
+        void changed(String word, String[] before, String[] after);
+    }
+
+    private static final String[] TOMBSTONE = new String[0];
+    // What a view keeps for a word that was not in the dictionary when it was taken
+    private static final String[] ABSENT = new String[0];
+    private static final View[] NO_VIEWS = new View[0];
+
+    private final ConcurrentHashMap<String, String[]> entries = new ConcurrentHashMap<>();
+    // Disjoint key ranges in key order; replaced as a whole by compact()
+    private volatile List<Segment> segments = Collections.emptyList();
+    private volatile boolean layered;
+    // Replaced, never changed, under this store's monitor
+    private volatile View[] open = NO_VIEWS;
+    // Words whose tombstones views closed meanwhile left behind for the views still open
+    private final Set<String> leftTombstones = new HashSet<>();
+    private final Listener listener;
+
+    DictionaryStore(Listener listener) {
+        this.listener = listener;
+    }
+
+    String[] get(String word) {
+        String[] meanings = entries.get(word);
+        if (meanings == TOMBSTONE) return null;
+        return meanings != null ? meanings : fromSegments(word);
+    }
+
+    // Every word, overlay first, then the segment words it does not cover
+    void forEach(BiConsumer<String, String[]> action) {
+        entries.forEach((word, meanings) -> {
+            if (meanings != TOMBSTONE) action.accept(word, meanings);
+        });
+        for (Segment segment : segments) {
+            Segment.Cursor cursor = segment.cursor();
+            while (cursor.advance()) {
+                String word = new String(cursor.word, StandardCharsets.UTF_8);
+                if (!entries.containsKey(word)) action.accept(word, cursor.meanings);
+            }
+        }
+    }
+
+    // The dictionary as it is now; close the view when done. A layered store has one too, for
+    // writing it out as a plain snapshot when segments are dropped.
+    synchronized View snapshot() {
+        View view = new View();
+        View[] views = Arrays.copyOf(open, open.length + 1);
+        views[views.length - 1] = view;
+        open = views;
+        return view;
+    }
+
+    synchronized boolean hasOpenViews() {
+        return open.length > 0;
+    }
+
+    List<Segment> segments() {
+        return segments;
+    }
+
+    // Used at startup, before anything else touches the store
+    void attach(List<Segment> segments) {
+        this.segments = segments;
+        this.layered = true;
+    }
+
+    // Write the whole dictionary into new segment files, switch to them, and drop the overlay
+    // entries they now hold. Changes made meanwhile stay in the overlay, as they are newer.
+    List<Segment> compact(Iterator<Path> paths) throws IOException {
+        // An open view reads the segments it started with
+        if (open.length > 0) throw new IllegalStateException("A snapshot is open");
+        Map<String, String[]> frozen = new HashMap<>(entries);
+        List<byte[]> keys = new ArrayList<>(frozen.size());
+        for (String word : frozen.keySet()) keys.add(Segment.utf8(word));
+        keys.sort(Segment::compare);
+
+        List<Path> written;
+        try (Segment.Writer writer = new Segment.Writer(paths)) {
+            Iterator<byte[]> overlay = keys.iterator();
+            byte[] nextKey = overlay.hasNext() ? overlay.next() : null;
+            for (Segment segment : segments) {
+                Segment.Cursor cursor = segment.cursor();
+                while (cursor.advance()) {
+                    // Overlay words that sort before this segment word go first
+                    while (nextKey != null && Segment.compare(nextKey, cursor.word) < 0) {
+                        writeOverlay(writer, nextKey, frozen);
+                        nextKey = overlay.hasNext() ? overlay.next() : null;
+                    }
+                    if (nextKey != null && Segment.compare(nextKey, cursor.word) == 0) {
+                        writeOverlay(writer, nextKey, frozen);
+                        nextKey = overlay.hasNext() ? overlay.next() : null;
+                    } else {
+                        writer.add(cursor.word, cursor.meanings);
+                    }
+                }
+            }
+            while (nextKey != null) {
+                writeOverlay(writer, nextKey, frozen);
+                nextKey = overlay.hasNext() ? overlay.next() : null;
+            }
+            written = writer.paths();
+        }
+
+        List<Segment> merged = new ArrayList<>(written.size());
+        for (Path path : written) merged.add(Segment.open(path));
+        segments = Collections.unmodifiableList(merged);
+        // remove(key, value) matches arrays by identity, so anything changed since the freeze stays
+        frozen.forEach(entries::remove);
+        return segments;
+    }
+
+    private static void writeOverlay(Segment.Writer writer, byte[] key, Map<String, String[]> frozen) throws IOException {
+        String[] meanings = frozen.get(new String(key, StandardCharsets.UTF_8));
+        if (meanings != TOMBSTONE) writer.add(key, meanings);
+    }
+
+    private String[] fromSegments(String word) {
+        List<Segment> current = segments;
+        if (current.isEmpty()) return null;
+        byte[] key = Segment.utf8(word);
+        for (Segment segment : current) {
+            String[] meanings = segment.get(key);
+            if (meanings != null) return meanings;
+        }
+        return null;
+    }
+
+    // What compute() saw for the word: the overlay entry, or the segments when it has none
+    private String[] resolve(String word, String[] current) {
+        if (current == TOMBSTONE) return null;
+        return current != null ? current : fromSegments(word);
+    }
+
+    // How the overlay records that the word is gone. Once layered it is always a tombstone, even
+    // for a word no segment has yet: a compaction running right now may be writing it into one.
+    // While a view is open it is one as well, so the view still comes across the word.
+    private String[] absent() {
+        return layered || open.length > 0 ? TOMBSTONE : null;
+    }
+
+    // Inside the word's compute(): each open view keeps the state before its first change
+    private void changed(String word, String[] before, String[] after) {
+        for (View view : open) view.before.putIfAbsent(word, before == null ? ABSENT : before);
+        listener.changed(word, before, after);
+    }
+
+    Outcome add(String word, String[] meanings) {
+        Outcome[] outcome = {Outcome.DONE};
+        entries.compute(word, (w, current) -> {
+            if (resolve(w, current) != null) {
+                outcome[0] = Outcome.DUPLICATE;
+                return current;
+            }
+            changed(w, null, meanings);
+            return meanings;
+        });
+        return outcome[0];
+    }
+
+    Outcome remove(String word) {
+        Outcome[] outcome = {Outcome.NOT_FOUND};
+        entries.compute(word, (w, current) -> {
+            String[] existing = resolve(w, current);
+            if (existing == null) return current;
+            outcome[0] = Outcome.DONE;
+            changed(w, existing, null);
+            return absent();
+        });
+        return outcome[0];
+    }
+
+    Outcome addMeaning(String word, String meaning) {
+        Outcome[] outcome = {Outcome.NOT_FOUND};
+        entries.compute(word, (w, current) -> {
+            String[] existing = resolve(w, current);
+            if (existing == null) return current;
+            if (indexOf(existing, meaning) >= 0) {
+                outcome[0] = Outcome.MEANING_EXISTS;
+                return current;
+            }
+            String[] next = Arrays.copyOf(existing, existing.length + 1);
+            next[existing.length] = meaning;
+            outcome[0] = Outcome.DONE;
+            changed(w, existing, next);
+            return next;
+        });
+        return outcome[0];
+    }
+
+    Outcome updateMeaning(String word, String oldMeaning, String newMeaning) {
+        Outcome[] outcome = {Outcome.NOT_FOUND};
+        entries.compute(word, (w, current) -> {
+            String[] existing = resolve(w, current);
+            if (existing == null) return current;
+            int at = indexOf(existing, oldMeaning);
+            if (at < 0) {
+                outcome[0] = Outcome.OLD_MEANING_NOT_FOUND;
+                return current;
+            }
+            String[] next;
+            if (indexOf(existing, newMeaning) >= 0) {
+                // The new meaning is already there, so the old one just goes
+                next = new String[existing.length - 1];
+                System.arraycopy(existing, 0, next, 0, at);
+                System.arraycopy(existing, at + 1, next, at, existing.length - at - 1);
+            } else {
+                next = existing.clone();
+                next[at] = newMeaning;
+            }
+            outcome[0] = Outcome.DONE;
+            changed(w, existing, next);
+            return next;
+        });
+        return outcome[0];
+    }
+
+    // Make the word's state exactly `meanings` (null removes it), as a replica does with what the
+    // primary sends; false if it already was
+    boolean replace(String word, String[] meanings) {
+        boolean[] changed = {false};
+        entries.compute(word, (w, current) -> {
+            String[] existing = resolve(w, current);
+            if (Arrays.equals(existing, meanings)) return current;
+            changed[0] = true;
+            changed(w, existing, meanings);
+            return meanings == null ? absent() : meanings;
+        });
+        return changed[0];
+    }
+
+    // Set a word's state while loading a snapshot or replaying the log, before the indexes are
+    // built; null meanings remove the word. The listener is not told.
+    void restore(String word, String[] meanings) {
+        if (meanings == null) {
+            if (absent() == null) {
+                entries.remove(word);
+            } else {
+                entries.put(word, TOMBSTONE);
+            }
+        } else {
+            entries.put(word, meanings);
+        }
+    }
+
+    // The words as they were when snapshot() returned. A change that was still running then may
+    // or may not be in it, but any change that started after one it has is left out as well.
+    final class View implements AutoCloseable {
+        // Words changed since the view was taken, with the meanings they had then
+        private final ConcurrentHashMap<String, String[]> before = new ConcurrentHashMap<>();
+
+        // Every word in the view; runs alongside writers and never blocks them. Overlay words
+        // that a segment holds as well are left to the segment pass, so each comes once.
+        void forEach(BiConsumer<String, String[]> action) {
+            List<Segment> current = segments;
+            entries.forEach((word, meanings) -> {
+                if (current.isEmpty() || fromSegments(word) == null) emit(word, meanings, action);
+            });
+            for (Segment segment : current) {
+                Segment.Cursor cursor = segment.cursor();
+                while (cursor.advance()) {
+                    String word = new String(cursor.word, StandardCharsets.UTF_8);
+                    String[] overlay = entries.get(word);
+                    emit(word, overlay != null ? overlay : cursor.meanings, action);
+                }
+            }
+        }
+
+        // `current` must be read first: a change made since then kept the state before it here
+        // before storing its own
+        private void emit(String word, String[] current, BiConsumer<String, String[]> action) {
+            String[] meanings = before.getOrDefault(word, current);
+            if (meanings != TOMBSTONE && meanings != ABSENT) action.accept(word, meanings);
+        }
+
+        // How many words changed while the view was open
+        int copied() {
+            return before.size();
+        }
+
+        // Tombstones only left for views go again once the last of them closes; a removal still
+        // running then may leave one, which reads as an absent word like any other
+        @Override
+        public void close() {
+            synchronized (DictionaryStore.this) {
+                List<View> views = new ArrayList<>(Arrays.asList(open));
+                if (!views.remove(this)) return;
+                open = views.toArray(NO_VIEWS);
+                if (layered) return;
+                leftTombstones.addAll(before.keySet());
+                if (open.length > 0) return;
+                for (String word : leftTombstones) entries.remove(word, TOMBSTONE);
+                leftTombstones.clear();
+            }
+        }
+    }
+
+    private static int indexOf(String[] meanings, String meaning) {
+        for (int i = 0; i < meanings.length; i++) {
+            if (meanings[i].equals(meaning)) return i;
+        }
+        return -1;
+    }
+}
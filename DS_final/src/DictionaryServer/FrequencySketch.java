@@ -0,0 +1,72 @@
+package DictionaryServer;
+
+// Approximate access counts for the TinyLFU admission policy of ResponseCache: a count-min
+// sketch of 4-bit counters, sixteen to a long, with four counters per key. Once enough
+// increments have been recorded every counter is halved, so words that were popular an hour
+// ago slowly give way to the ones asked for now. Updates are not atomic; losing the odd
+// increment under contention only blurs an estimate that is approximate anyway.
+final class FrequencySketch {
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = {0x97cb3127, 0xb1b1d4f3, 0x2f8a7d65, 0x5bd1e995};
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int size = Integer.highestOneBit(Math.max(16, expectedEntries) - 1) << 1;
+        this.table = new long[size];
+        this.mask = size - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    // Estimated number of recent accesses, at most 15
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = 15;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int shift = offsetOf(hash, i);
+            frequency = Math.min(frequency, (int) ((table[index] >>> shift) & 0xF));
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int shift = offsetOf(hash, i);
+            if (((table[index] >>> shift) & 0xF) != 0xF) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) reset();
+    }
+
+    // Halve every counter
+    private void reset() {
+        additions = 0;
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+    }
+
+    private int indexOf(int hash, int i) {
+        int h = (hash ^ SEEDS[i]) * SEEDS[i];
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // Which of the sixteen 4-bit counters in the long this hash function uses
+    private static int offsetOf(int hash, int i) {
+        return (((hash >>> (i << 3)) & 3) + (i << 2)) << 2;
+    }
+
+    private static int spread(int h) {
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 15);
+    }
+}
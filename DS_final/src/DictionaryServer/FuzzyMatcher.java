@@ -0,0 +1,139 @@
+package DictionaryServer;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+// "Did you mean" suggestions, found by walking the sorted headwords of the prefix index as if
+// they were a trie. One Levenshtein DP row is kept per character of the current word; the next
+// word reuses the rows of the prefix it shares with the previous one, and as soon as every cell
+// of a row is above the bound no word with that prefix can match, so the whole prefix range is
+// skipped in one seek. Because it reads the live skip list, it is always as up to date as the
+// prefix index and needs no structure of its own.
+//
+// The walk still visits thousands of prefixes of a large dictionary, so words one edit away are
+// found without it: each deletion, substitution and insertion of a-z is looked up, about 53
+// lookups per letter of the target. Only a larger distance walks, and at most `budget` DP rows
+// and words per miss, returning what it found by then.
+final class FuzzyMatcher {
+    // Targets longer than any real word get no suggestions rather than a walk with rows this wide
+    static final int MAX_TARGET_LENGTH = 64;
+
+    private final NavigableSet<String> words;
+    // Cheaper than the skip list for the single-edit lookups
+    private final Predicate<String> exists;
+
+    FuzzyMatcher(NavigableSet<String> words, Predicate<String> exists) {
+        this.words = words;
+        this.exists = exists;
+    }
+
+    FuzzyMatcher(NavigableSet<String> words) {
+        this(words, words::contains);
+    }
+
+    // Closest words within maxDistance, nearest first, ties alphabetical. Every word one edit away
+    // is always found; farther ones only as far as the budget reaches.
+    List<String> suggest(String target, int maxDistance, int limit, int budget) {
+        if (maxDistance <= 0 || target.length() > MAX_TARGET_LENGTH) return Collections.emptyList();
+        Map<String, Integer> found = new HashMap<>();
+        for (String word : oneEditAway(target)) found.put(word, 1);
+        if (maxDistance > 1 && found.size() < limit) walk(target, maxDistance, budget, found);
+
+        List<String> suggestions = new ArrayList<>(found.keySet());
+        suggestions.sort((a, b) -> found.get(a).equals(found.get(b)) ? a.compareTo(b) : Integer.compare(found.get(a), found.get(b)));
+        return suggestions.size() > limit ? new ArrayList<>(suggestions.subList(0, limit)) : suggestions;
+    }
+
+    private Set<String> oneEditAway(String target) {
+        Set<String> near = new HashSet<>();
+        int m = target.length();
+        StringBuilder candidate = new StringBuilder(m + 1);
+        for (int i = 0; i <= m; i++) {
+            if (i < m) {
+                candidate.setLength(0);
+                candidate.append(target, 0, i).append(target, i + 1, m);
+                check(candidate, near);
+            }
+            for (char c = 'a'; c <= 'z'; c++) {
+                if (i < m && c != target.charAt(i)) {
+                    candidate.setLength(0);
+                    candidate.append(target).setCharAt(i, c);
+                    check(candidate, near);
+                }
+                candidate.setLength(0);
+                candidate.append(target, 0, i).append(c).append(target, i, m);
+                check(candidate, near);
+            }
+        }
+        return near;
+    }
+
+    private void check(CharSequence candidate, Set<String> near) {
+        String word = candidate.toString();
+        if (!word.isEmpty() && exists.test(word)) near.add(word);
+    }
+
+    // Adds the words within maxDistance the budget reaches, keeping distances already found
+    private void walk(String target, int maxDistance, int budget, Map<String, Integer> found) {
+        int m = target.length();
+        int[][] rows = new int[m + maxDistance + 2][];
+        rows[0] = new int[m + 1];
+        for (int j = 0; j <= m; j++) rows[0][j] = j;
+
+        String previous = "";
+        int valid = 0;   // rows[1..valid] belong to the prefixes of `previous`
+        // Step with an iterator and only seek (O(log n)) when a whole prefix range is skipped
+        Iterator<String> it = words.iterator();
+        String word = it.hasNext() ? it.next() : null;
+        int left = budget;
+        while (word != null && left-- > 0) {
+            int depth = Math.min(commonPrefix(previous, word), valid);
+            String skipPrefix = null;
+            // Words much longer than the target can never come within the bound
+            int limitDepth = Math.min(word.length(), m + maxDistance);
+            while (depth < limitDepth) {
+                depth++;
+                left--;
+                if (rows[depth] == null) rows[depth] = new int[m + 1];
+                int[] above = rows[depth - 1];
+                int[] row = rows[depth];
+                char c = word.charAt(depth - 1);
+                row[0] = depth;
+                int min = row[0];
+                for (int j = 1; j <= m; j++) {
+                    int cost = target.charAt(j - 1) == c ? 0 : 1;
+                    row[j] = Math.min(Math.min(row[j - 1] + 1, above[j] + 1), above[j - 1] + cost);
+                    if (row[j] < min) min = row[j];
+                }
+                if (min > maxDistance) {
+                    skipPrefix = word.substring(0, depth);
+                    break;
+                }
+            }
+            valid = depth;
+            previous = word;
+            if (skipPrefix != null) {
+                valid = depth - 1;
+                it = words.tailSet(skipPrefix + Character.MAX_VALUE, false).iterator();
+                word = it.hasNext() ? it.next() : null;
+                continue;
+            }
+            if (word.length() > m + maxDistance) {
+                // Every longer word under this prefix is out of reach too
+                it = words.tailSet(word.substring(0, m + maxDistance) + Character.MAX_VALUE, false).iterator();
+                word = it.hasNext() ? it.next() : null;
+                continue;
+            }
+            int d = rows[word.length()][m];
+            if (d <= maxDistance) found.putIfAbsent(word, d);
+            word = it.hasNext() ? it.next() : null;
+        }
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
+}
@@ -0,0 +1,86 @@
+package DictionaryServer;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Fan-out of "this word changed" events to connections that sent "subscribe", so clients can
+// cache lookups and still stay correct. Publishing never blocks: each subscriber has its own
+// bounded queue, drained in order by a pooled thread, so a slow subscriber only delays itself.
+// One whose queue fills up is cut off and closed, since its client could no longer trust its cache.
+final class InvalidationHub {
+    // Events a subscriber may have waiting before it counts as fallen behind
+    static final int MAX_PENDING = 1024;
+
+    // Implemented by each front end, in whatever way that connection writes to its client
+    interface Subscriber {
+        // May block; never called by two threads at once for the same subscriber
+        void invalidate(String word) throws Exception;
+
+        // It gets no more events, so the connection has to end
+        void close();
+    }
+
+    private final Map<Subscriber, Feed> feeds = new ConcurrentHashMap<>();
+    private final ExecutorService delivery = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "dictionary-invalidations");
+        t.setDaemon(true);
+        return t;
+    });
+
+    void subscribe(Subscriber subscriber) {
+        feeds.computeIfAbsent(subscriber, Feed::new);
+    }
+
+    void unsubscribe(Subscriber subscriber) {
+        if (subscriber != null) feeds.remove(subscriber);
+    }
+
+    void publish(String word) {
+        if (feeds.isEmpty()) return;
+        for (Feed feed : feeds.values()) feed.offer(word);
+    }
+
+    private void drop(Feed feed) {
+        if (feeds.remove(feed.subscriber, feed)) feed.subscriber.close();
+    }
+
+    private final class Feed implements Runnable {
+        final Subscriber subscriber;
+        final BlockingQueue<String> pending = new LinkedBlockingQueue<>(MAX_PENDING);
+        // Whether a delivery thread is draining this feed
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Feed(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void offer(String word) {
+            if (!pending.offer(word)) {
+                drop(this);
+                return;
+            }
+            if (scheduled.compareAndSet(false, true)) delivery.execute(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                String word;
+                while ((word = pending.poll()) != null) subscriber.invalidate(word);
+            } catch (Exception e) {
+                // The connection is gone or was cut off; it will not see any more events
+                drop(this);
+                return;
+            }
+            scheduled.set(false);
+            // An event may have arrived between the last poll and clearing the flag
+            if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) delivery.execute(this);
+        }
+    }
+
+    // JSON form of the event, sent on the same line stream as responses
+    static String event(String word) {
+        return new org.json.JSONObject().put("event", "invalidate").put("word", word).toString();
+    }
+}
@@ -0,0 +1,96 @@
+package DictionaryServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Splits a stream into newline-terminated lines inside one reused byte buffer, for the threaded
+// JSON front end. Unlike BufferedReader.readLine it decodes nothing: the caller gets the bytes of
+// the line in place and only builds a String when it needs one.
+final class LineReader {
+    // Longest request line we are willing to buffer for a single client, as in NioServer
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+
+    private final InputStream in;
+    private byte[] buffer = new byte[8192];
+    private int start;   // first unread byte
+    private int end;     // end of the bytes read so far
+    private int lineStart, lineEnd;
+
+    LineReader(InputStream in) {
+        this.in = in;
+    }
+
+    // Advance to the next line that is not blank, without its "\n" or "\r\n"; false at the end
+    // of the stream. Blank lines are skipped as NioServer skips them.
+    boolean next() throws IOException {
+        while (nextLine()) {
+            if (!blank(lineStart, lineEnd)) return true;
+        }
+        return false;
+    }
+
+    private boolean nextLine() throws IOException {
+        int scanned = start;
+        while (true) {
+            for (int i = scanned; i < end; i++) {
+                if (buffer[i] != '\n') continue;
+                lineStart = start;
+                lineEnd = i > start && buffer[i - 1] == '\r' ? i - 1 : i;
+                start = i + 1;
+                return true;
+            }
+            scanned = end - start;
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (end == buffer.length) {
+                if (buffer.length >= MAX_LINE_BYTES) throw new IOException("Request line too long");
+                buffer = java.util.Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                // Like readLine, a last line without a newline still counts
+                if (end == start) return false;
+                lineStart = start;
+                lineEnd = end;
+                start = end;
+                return true;
+            }
+            end += read;
+        }
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int lineStart() {
+        return lineStart;
+    }
+
+    int lineEnd() {
+        return lineEnd;
+    }
+
+    // Whether another complete line that is not blank has already arrived, so replies can be
+    // flushed together
+    boolean hasBufferedLine() {
+        int from = start;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] != '\n') continue;
+            if (!blank(from, i)) return true;
+            from = i + 1;
+        }
+        return false;
+    }
+
+    // Nothing but spaces and control characters, which NioServer trims away
+    private boolean blank(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if ((buffer[i] & 0xFF) > ' ') return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,297 @@
+package DictionaryServer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Inverted index from the tokens of every meaning to the words that use them, for "search".
+// Words are numbered and each token maps to sorted int arrays of word ids instead of a boxed set,
+// which keeps the index to a few bytes per posting. Writers swap in a new Postings through
+// ConcurrentHashMap.compute, which also serializes them per token, so searches read without locks.
+// The ids of removed words are handed out again, so churn does not grow the id -> word array.
+final class MeaningIndex {
+    // Tokens so common that their posting lists would be huge and useless to search on
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "in", "is", "it",
+            "of", "on", "or", "that", "the", "to", "was", "with"));
+    private static final int[] EMPTY = new int[0];
+
+    private final ConcurrentHashMap<String, Postings> postings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // id -> word; replaced (never resized in place) under idLock so readers can use it freely
+    private volatile String[] words = new String[1024];
+    private int nextId;
+    // Ids of removed words, no longer in any posting list, to give to the next new words
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private final Object idLock = new Object();
+
+    // Reflect a change to one word's meanings: tokens only found in `removed` (and in none of
+    // the meanings the word still has) are dropped, tokens of `added` are indexed
+    void update(String word, Collection<String> removed, Collection<String> added, Collection<String> current) {
+        int id = idOf(word);
+        Set<String> stale = tokens(removed);
+        if (!stale.isEmpty()) stale.removeAll(tokens(current));
+        for (String token : stale) {
+            postings.computeIfPresent(token, (t, list) -> {
+                Postings next = list.without(id);
+                return next.size() == 0 ? null : next;
+            });
+        }
+        for (String token : tokens(added)) {
+            postings.compute(token, (t, list) -> (list == null ? Postings.NONE : list).with(id));
+        }
+    }
+
+    // Index a whole dictionary at startup. Words get ids in the order they are visited, so each
+    // token's postings are appended in sorted order to a growable array and published once.
+    void build(DictionaryStore dictionary) {
+        Map<String, Growing> building = new HashMap<>();
+        dictionary.forEach((word, meanings) -> {
+            int id = idOf(word);
+            for (String token : tokens(Arrays.asList(meanings))) {
+                building.computeIfAbsent(token, t -> new Growing()).add(id);
+            }
+        });
+        for (Map.Entry<String, Growing> entry : building.entrySet()) {
+            Growing built = entry.getValue();
+            postings.merge(entry.getKey(), new Postings(built.ids, built.size, EMPTY, EMPTY),
+                    (current, added) -> current.merged(added.ids()));
+        }
+    }
+
+    private static final class Growing {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+    void removeWord(String word, Collection<String> meanings) {
+        Integer id = ids.get(word);
+        if (id == null) return;
+        update(word, meanings, Collections.emptyList(), Collections.emptyList());
+        synchronized (idLock) {
+            ids.remove(word);
+            words[id] = null;
+            if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+            freeIds[freeCount++] = id;
+        }
+    }
+
+    // Words whose meanings contain all (or any) of the terms, in no particular order
+    List<String> search(String text, boolean matchAll, int limit) {
+        List<Postings> lists = new ArrayList<>();
+        Set<String> terms = tokens(Collections.singletonList(text));
+        for (String token : terms) {
+            Postings list = postings.get(token);
+            if (list == null) {
+                if (matchAll) return Collections.emptyList();
+                continue;
+            }
+            lists.add(list);
+        }
+        if (lists.isEmpty()) return Collections.emptyList();
+        int[] hits;
+        if (matchAll) {
+            hits = intersect(lists);
+        } else {
+            List<int[]> all = new ArrayList<>();
+            for (Postings list : lists) all.add(list.ids());
+            hits = union(all);
+        }
+        String[] byId = words;
+        List<String> results = new ArrayList<>(Math.min(limit, hits.length));
+        for (int id : hits) {
+            if (results.size() >= limit) break;
+            String word = id < byId.length ? byId[id] : null;
+            if (word != null && stillMatches(terms, matchAll, id)) results.add(word);
+        }
+        return results;
+    }
+
+    // The lists searched may be older than the id's word: it may have been removed since and the
+    // id given to a word that does not match, so the hit is checked against the lists as they are now
+    private boolean stillMatches(Set<String> terms, boolean matchAll, int id) {
+        for (String token : terms) {
+            Postings list = postings.get(token);
+            boolean found = list != null && list.contains(id);
+            if (found != matchAll) return found;
+        }
+        return matchAll;
+    }
+
+    // Ids handed out so far, the size the id -> word array has to have
+    int idSpace() {
+        synchronized (idLock) {
+            return nextId;
+        }
+    }
+
+    private int idOf(String word) {
+        Integer id = ids.get(word);
+        if (id != null) return id;
+        synchronized (idLock) {
+            id = ids.get(word);
+            if (id != null) return id;
+            int next = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+            String[] byId = words;
+            if (next == byId.length) byId = Arrays.copyOf(byId, byId.length * 2);
+            byId[next] = word;
+            words = byId;
+            ids.put(word, next);
+            return next;
+        }
+    }
+
+    static Set<String> tokens(Collection<String> texts) {
+        Set<String> tokens = new HashSet<>();
+        for (String text : texts) {
+            int start = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+                if (letter && start < 0) {
+                    start = i;
+                } else if (!letter && start >= 0) {
+                    String token = text.substring(start, i).toLowerCase();
+                    if (token.length() > 1 && !STOP_WORDS.contains(token)) tokens.add(token);
+                    start = -1;
+                }
+            }
+        }
+        return tokens;
+    }
+
+    // One token's word ids: a sorted base plus the ids added to and removed from it since, each
+    // sorted. A version is never changed once published, except that the newest one may append
+    // ids above all others to the spare capacity of its base, past the length older versions see:
+    // words created in order (a bulk import, new words) cost O(1) each. Other changes copy only
+    // the small added/removed arrays, which are merged into a new base once they outgrow about
+    // the square root of it, instead of copying every posting of a common token each time.
+    private static final class Postings {
+        static final Postings NONE = new Postings(EMPTY, 0, EMPTY, EMPTY);
+        private static final int MIN_PENDING = 64;
+
+        private final int[] base;
+        private final int length;
+        private final int[] added;
+        private final int[] removed;
+
+        Postings(int[] base, int length, int[] added, int[] removed) {
+            this.base = base;
+            this.length = length;
+            this.added = added;
+            this.removed = removed;
+        }
+
+        int size() {
+            return length + added.length - removed.length;
+        }
+
+        boolean contains(int id) {
+            if (Arrays.binarySearch(added, id) >= 0) return true;
+            return Arrays.binarySearch(base, 0, length, id) >= 0 && Arrays.binarySearch(removed, id) < 0;
+        }
+
+        Postings with(int id) {
+            if (Arrays.binarySearch(removed, id) >= 0) return changed(added, MeaningIndex.without(removed, id));
+            if (contains(id)) return this;
+            if (added.length == 0 && (length == 0 || id > base[length - 1])) {
+                int[] grown = length < base.length ? base : Arrays.copyOf(base, Math.max(4, length * 2));
+                grown[length] = id;
+                return new Postings(grown, length + 1, added, removed);
+            }
+            return changed(MeaningIndex.with(added, id), removed);
+        }
+
+        Postings without(int id) {
+            if (Arrays.binarySearch(added, id) >= 0) return changed(MeaningIndex.without(added, id), removed);
+            if (!contains(id)) return this;
+            return changed(added, MeaningIndex.with(removed, id));
+        }
+
+        private Postings changed(int[] added, int[] removed) {
+            Postings next = new Postings(base, length, added, removed);
+            int pending = added.length + removed.length;
+            return pending > Math.max(MIN_PENDING, 2 * (int) Math.sqrt(length)) ? next.merged(EMPTY) : next;
+        }
+
+        // A single base holding these ids and `more`, with room to append to
+        Postings merged(int[] more) {
+            int[] all = union(Arrays.asList(ids(), more));
+            return new Postings(Arrays.copyOf(all, all.length + all.length / 4), all.length, EMPTY, EMPTY);
+        }
+
+        int[] ids() {
+            if (added.length == 0 && removed.length == 0) return Arrays.copyOf(base, length);
+            int[] ids = new int[size()];
+            int n = 0;
+            int a = 0;
+            int r = 0;
+            for (int i = 0; i < length; i++) {
+                int id = base[i];
+                while (a < added.length && added[a] < id) ids[n++] = added[a++];
+                if (r < removed.length && removed[r] == id) {
+                    r++;
+                } else {
+                    ids[n++] = id;
+                }
+            }
+            while (a < added.length) ids[n++] = added[a++];
+            return ids;
+        }
+    }
+
+    private static int[] with(int[] list, int id) {
+        int at = Arrays.binarySearch(list, id);
+        if (at >= 0) return list;
+        int insert = -at - 1;
+        int[] next = new int[list.length + 1];
+        System.arraycopy(list, 0, next, 0, insert);
+        next[insert] = id;
+        System.arraycopy(list, insert, next, insert + 1, list.length - insert);
+        return next;
+    }
+
+    private static int[] without(int[] list, int id) {
+        int at = Arrays.binarySearch(list, id);
+        if (at < 0) return list;
+        int[] next = new int[list.length - 1];
+        System.arraycopy(list, 0, next, 0, at);
+        System.arraycopy(list, at + 1, next, at, list.length - at - 1);
+        return next;
+    }
+
+    // The ids of the shortest list that every other one contains
+    private static int[] intersect(List<Postings> lists) {
+        lists.sort(Comparator.comparingInt(Postings::size));
+        int[] shortest = lists.get(0).ids();
+        int[] result = new int[shortest.length];
+        int n = 0;
+        for (int id : shortest) {
+            boolean everywhere = true;
+            for (int i = 1; i < lists.size() && everywhere; i++) everywhere = lists.get(i).contains(id);
+            if (everywhere) result[n++] = id;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int[] union(List<int[]> lists) {
+        int total = 0;
+        for (int[] list : lists) total += list.length;
+        int[] all = new int[total];
+        int n = 0;
+        for (int[] list : lists) {
+            System.arraycopy(list, 0, all, n, list.length);
+            n += list.length;
+        }
+        Arrays.sort(all);
+        int unique = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (i == 0 || all[i] != all[i - 1]) all[unique++] = all[i];
+        }
+        return Arrays.copyOf(all, unique);
+    }
+}
@@ -0,0 +1,376 @@
+package DictionaryServer;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.json.*;
+import DictionaryProtocol.BinaryProtocol;
+
+// Counters and latency histograms for the whole server, cheap enough to stay on under full
+// load. Counters are LongAdders; latencies go to HdrHistogram Recorders, which take a value
+// without locking, and each histogram is split into stripes picked by thread so request
+// threads rarely touch the same cache lines. Readers (the "stats" action, JMX) fold the stripes
+// into running totals, so every figure covers the time since the server started.
+final class Metrics {
+    enum Action {
+        QUERY("query"), ADD("add"), REMOVE("remove"), ADD_MEANING("addmeaning"), UPDATE_MEANING("updatemeaning"),
+        PREFIX("prefix"), SEARCH("search"), BATCH("batch"), SUBSCRIBE("subscribe"), STATS("stats"),
+        DISCONNECT("disconnect"), PEER("peer"), PUT("put"), RING("ring"), IMPORT("import"), EXPORT("export"),
+        INVALID("invalid");
+
+        final String request;
+
+        Action(String request) {
+            this.request = request;
+        }
+
+        static Action of(String request) {
+            switch (request.toLowerCase()) {
+                case "query": return QUERY;
+                case "add": return ADD;
+                case "remove": return REMOVE;
+                case "addmeaning": return ADD_MEANING;
+                case "updatemeaning": return UPDATE_MEANING;
+                case "prefix": return PREFIX;
+                case "search": return SEARCH;
+                case "batch": return BATCH;
+                case "subscribe": return SUBSCRIBE;
+                case "stats": return STATS;
+                case "disconnect": return DISCONNECT;
+                case "peer": return PEER;
+                case "put": return PUT;
+                case "ring": return RING;
+                case "import": return IMPORT;
+                case "export": return EXPORT;
+                default: return INVALID;
+            }
+        }
+
+        static Action of(byte code) {
+            switch (code) {
+                case BinaryProtocol.QUERY: return QUERY;
+                case BinaryProtocol.ADD: return ADD;
+                case BinaryProtocol.REMOVE: return REMOVE;
+                case BinaryProtocol.ADD_MEANING: return ADD_MEANING;
+                case BinaryProtocol.UPDATE_MEANING: return UPDATE_MEANING;
+                case BinaryProtocol.PREFIX: return PREFIX;
+                case BinaryProtocol.SEARCH: return SEARCH;
+                case BinaryProtocol.SUBSCRIBE: return SUBSCRIBE;
+                case BinaryProtocol.STATS: return STATS;
+                case BinaryProtocol.DISCONNECT: return DISCONNECT;
+                default: return INVALID;
+            }
+        }
+    }
+
+    // Requests that change a word, timed apart while a snapshot is being written
+    private static final EnumSet<Action> WRITES = EnumSet.of(Action.ADD, Action.REMOVE, Action.ADD_MEANING,
+            Action.UPDATE_MEANING, Action.PUT);
+
+    // Values are nanoseconds; two significant digits keep each stripe small and are within 1%
+    private static final long HIGHEST_NANOS = TimeUnit.HOURS.toNanos(1);
+    private static final int DIGITS = 2;
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final long started = System.currentTimeMillis();
+    private final ActionStats[] actions = new ActionStats[Action.values().length];
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final AtomicLong words = new AtomicLong();
+    private final Latency logWrites = new Latency();
+    private final Latency saves = new Latency();
+    private final LongAdder saveFailures = new LongAdder();
+    private final Latency writesDuringSave = new Latency();
+    private final Latency writesOtherwise = new Latency();
+    private volatile boolean saving;
+    private volatile long lastSaveCopies;
+    private volatile long loadMillis;
+
+    Metrics() {
+        for (Action action : Action.values()) actions[action.ordinal()] = new ActionStats();
+    }
+
+    // A request that took from `startNanos` until now
+    void request(Action action, long startNanos, boolean error) {
+        ActionStats stats = actions[action.ordinal()];
+        long nanos = System.nanoTime() - startNanos;
+        stats.latency.record(nanos);
+        if (error) stats.errors.increment();
+        if (WRITES.contains(action)) (saving ? writesDuringSave : writesOtherwise).record(nanos);
+    }
+
+    void busy() {
+        busy.increment();
+    }
+
+    void connectionOpened() {
+        accepted.increment();
+    }
+
+    void connectionRejected() {
+        rejected.increment();
+    }
+
+    void connectionClosed() {
+        closed.increment();
+    }
+
+    void wordsChanged(long delta) {
+        words.addAndGet(delta);
+    }
+
+    void loaded(long words, long millis) {
+        this.words.set(words);
+        this.loadMillis = millis;
+    }
+
+    void logWrite(long nanos) {
+        logWrites.record(nanos);
+    }
+
+    void saveStarted() {
+        saving = true;
+    }
+
+    void saved(long nanos, boolean success) {
+        saving = false;
+        saves.record(nanos);
+        if (!success) saveFailures.increment();
+    }
+
+    // Words changed while the last snapshot was written, whose old meanings it had to keep
+    void savedCopies(long words) {
+        lastSaveCopies = words;
+    }
+
+    // What the "stats" action answers with
+    JSONObject toJson() {
+        JSONObject connections = new JSONObject()
+                .put("open", openConnections())
+                .put("accepted", accepted.sum())
+                .put("rejected", rejected.sum());
+        JSONObject perAction = new JSONObject();
+        for (Action action : Action.values()) {
+            ActionStats stats = actions[action.ordinal()];
+            Histogram latency = stats.latency.total();
+            if (latency.getTotalCount() == 0) continue;
+            perAction.put(action.request, new JSONObject()
+                    .put("count", latency.getTotalCount())
+                    .put("errors", stats.errors.sum())
+                    .put("latencyMicros", toJson(latency)));
+        }
+        JSONObject persistence = new JSONObject()
+                .put("loadMillis", loadMillis)
+                .put("saves", saves.total().getTotalCount())
+                .put("saveFailures", saveFailures.sum())
+                .put("saveMillis", toJson(saves.total(), 1e6))
+                .put("lastSaveCopiedWords", lastSaveCopies)
+                .put("writeMicrosDuringSave", toJson(writesDuringSave.total()))
+                .put("writeMicrosOtherwise", toJson(writesOtherwise.total()))
+                .put("logWriteMicros", toJson(logWrites.total()));
+        return new JSONObject()
+                .put("uptimeSeconds", (System.currentTimeMillis() - started) / 1000)
+                .put("words", words.get())
+                .put("connections", connections)
+                .put("busy", busy.sum())
+                .put("actions", perAction)
+                .put("persistence", persistence);
+    }
+
+    private static JSONObject toJson(Histogram histogram) {
+        return toJson(histogram, 1e3);
+    }
+
+    private static JSONObject toJson(Histogram histogram, double unit) {
+        JSONObject json = new JSONObject();
+        if (histogram.getTotalCount() == 0) return json;
+        return json.put("mean", round(histogram.getMean() / unit))
+                .put("p50", round(histogram.getValueAtPercentile(50) / unit))
+                .put("p90", round(histogram.getValueAtPercentile(90) / unit))
+                .put("p99", round(histogram.getValueAtPercentile(99) / unit))
+                .put("p999", round(histogram.getValueAtPercentile(99.9) / unit))
+                .put("max", round(histogram.getMaxValue() / unit));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    private long openConnections() {
+        return accepted.sum() - closed.sum();
+    }
+
+    // Make the same figures readable over JMX, under DictionaryServer:type=...
+    void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new ServerBean(), new ObjectName("DictionaryServer:type=Server"));
+            for (Action action : Action.values()) {
+                server.registerMBean(new ActionBean(actions[action.ordinal()]),
+                        new ObjectName("DictionaryServer:type=Action,name=" + action.request));
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // The histogram counts the requests, so only errors need a counter of their own
+    private static final class ActionStats {
+        final LongAdder errors = new LongAdder();
+        final Latency latency = new Latency();
+    }
+
+    // A latency histogram written through per-thread stripes and read as one running total
+    private static final class Latency {
+        private final Recorder[] stripes = new Recorder[STRIPES];
+        private final Histogram total = new Histogram(HIGHEST_NANOS, DIGITS);
+        private Histogram recycled;
+
+        Latency() {
+            for (int i = 0; i < stripes.length; i++) stripes[i] = new Recorder(HIGHEST_NANOS, DIGITS);
+        }
+
+        void record(long nanos) {
+            int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            stripes[stripe].recordValue(Math.max(0, Math.min(nanos, HIGHEST_NANOS)));
+        }
+
+        // Folds what was recorded since the last call into the total; the result is a copy
+        synchronized Histogram total() {
+            for (Recorder stripe : stripes) {
+                recycled = stripe.getIntervalHistogram(recycled);
+                total.add(recycled);
+            }
+            return total.copy();
+        }
+    }
+
+    private final class ServerBean implements ServerMXBean {
+        @Override
+        public long getUptimeSeconds() {
+            return (System.currentTimeMillis() - started) / 1000;
+        }
+
+        @Override
+        public long getWords() {
+            return words.get();
+        }
+
+        @Override
+        public long getOpenConnections() {
+            return openConnections();
+        }
+
+        @Override
+        public long getAcceptedConnections() {
+            return accepted.sum();
+        }
+
+        @Override
+        public long getRejectedConnections() {
+            return rejected.sum();
+        }
+
+        @Override
+        public long getBusyRequests() {
+            return busy.sum();
+        }
+
+        @Override
+        public long getLoadMillis() {
+            return loadMillis;
+        }
+
+        @Override
+        public long getSaves() {
+            return saves.total().getTotalCount();
+        }
+
+        @Override
+        public long getSaveFailures() {
+            return saveFailures.sum();
+        }
+
+        @Override
+        public double getMaxSaveMillis() {
+            return saves.total().getMaxValue() / 1e6;
+        }
+
+        @Override
+        public double getP99LogWriteMicros() {
+            return logWrites.total().getValueAtPercentile(99) / 1e3;
+        }
+
+        @Override
+        public long getLastSaveCopiedWords() {
+            return lastSaveCopies;
+        }
+
+        @Override
+        public double getP99WriteMicrosDuringSave() {
+            return writesDuringSave.total().getValueAtPercentile(99) / 1e3;
+        }
+
+        @Override
+        public double getP99WriteMicrosOtherwise() {
+            return writesOtherwise.total().getValueAtPercentile(99) / 1e3;
+        }
+
+        @Override
+        public String getStats() {
+            return toJson().toString();
+        }
+    }
+
+    private static final class ActionBean implements ActionMXBean {
+        private final ActionStats stats;
+
+        ActionBean(ActionStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public long getCount() {
+            return stats.latency.total().getTotalCount();
+        }
+
+        @Override
+        public long getErrors() {
+            return stats.errors.sum();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            return stats.latency.total().getMean() / 1e3;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return stats.latency.total().getValueAtPercentile(50) / 1e3;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return stats.latency.total().getValueAtPercentile(99) / 1e3;
+        }
+
+        @Override
+        public double getP999Micros() {
+            return stats.latency.total().getValueAtPercentile(99.9) / 1e3;
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return stats.latency.total().getMaxValue() / 1e3;
+        }
+    }
+}
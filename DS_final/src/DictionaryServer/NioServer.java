@@ -0,0 +1,370 @@
+package DictionaryServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import DictionaryProtocol.BinaryProtocol;
+
+// Non-blocking front end speaking the same newline-delimited JSON protocol as handleClient.
+// A handful of event-loop threads own every socket and only frame lines and move bytes;
+// the dictionary work runs on a small fixed worker pool, one request at a time per connection
+// so responses keep the order of the requests. A connection whose first byte is the binary
+// handshake is framed with BinaryProtocol instead of by lines. A client that sends faster than
+// it reads its answers is no longer read from until it catches up.
+class NioServer {
+    // Longest request line we are willing to buffer for a single client
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    // Requests and events a client may have waiting for their answers before we stop reading
+    // from it; reading resumes once half of them went out
+    private static final int MAX_BACKLOG = 1024;
+
+    private final int port;
+    private final EventLoop[] loops;
+    private final ExecutorService workers;
+
+    NioServer(int port, int ioThreads, int workerThreads) throws IOException {
+        this.port = port;
+        this.loops = new EventLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            loops[i] = new EventLoop("dictionary-io-" + i);
+        }
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "dictionary-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Accept on the calling thread and hand connections to the loops round robin
+    void run() throws IOException {
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            System.out.println("Server is listening on port " + port + " (nio, " + loops.length + " event loops)");
+            int next = 0;
+            while (true) {
+                SocketChannel channel = server.accept();
+                // Still blocking here, so the refusal is written as the threaded server writes it
+                if (Server.connectionPermits != null && !Server.connectionPermits.tryAcquire()) {
+                    Server.metrics.connectionRejected();
+                    Server.reject(channel.socket());
+                    continue;
+                }
+                Server.metrics.connectionOpened();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            }
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // One direct buffer per loop, reused for every read on every connection it owns
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+
+        EventLoop(String name) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, name);
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new Connection(this, channel, key));
+                } catch (ClosedChannelException e) {
+                    // Client went away before we got to it
+                    Server.metrics.connectionClosed();
+                    if (Server.connectionPermits != null) Server.connectionPermits.release();
+                }
+            });
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (Thread.currentThread() != thread) selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) task.run();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (!key.isValid()) continue;
+                        if (key.isReadable()) connection.onReadable(readBuffer);
+                        if (key.isValid() && key.isWritable()) connection.flush();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private final class Connection implements InvalidationHub.Subscriber {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        // Bytes of a request line that is not complete yet; only allocated when needed
+        private ByteArrayOutputStream partial;
+        // The binary frame being read, whole or in pieces over several reads, and its bytes so far
+        private byte[] frame;
+        private int frameBytes;
+        // Decided by the first byte the client sends
+        private boolean protocolKnown;
+        private boolean binary;
+        // Complete request lines (as bytes) or frames waiting for a worker, and whether a worker is draining them
+        private final Queue<Object> requests = new ConcurrentLinkedQueue<>();
+        // Only used by the one worker draining this connection at a time
+        private final QueryFastPath fastPath = new QueryFastPath();
+        private final AtomicBoolean processing = new AtomicBoolean();
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        private volatile boolean closeAfterFlush;
+        // Requests read and events published whose bytes are not written yet, and whether
+        // reading is paused for that; the flag is only touched on the event loop
+        private final AtomicInteger backlog = new AtomicInteger();
+        private boolean readPaused;
+        // Closed by the event loop or by the hub, whichever comes first, but counted once
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Connection(EventLoop loop, SocketChannel channel, SelectionKey key) {
+            this.loop = loop;
+            this.channel = channel;
+            this.key = key;
+        }
+
+        // Frame as many complete lines as this read delivered
+        void onReadable(ByteBuffer buffer) {
+            buffer.clear();
+            int read;
+            try {
+                read = channel.read(buffer);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read < 0) {
+                close();
+                return;
+            }
+            buffer.flip();
+            if (!protocolKnown && buffer.hasRemaining()) {
+                protocolKnown = true;
+                if ((buffer.get(0) & 0xFF) == BinaryProtocol.HANDSHAKE) {
+                    binary = true;
+                    buffer.position(1);
+                    backlog.incrementAndGet();
+                    responses.add(ByteBuffer.wrap(new byte[]{(byte) BinaryProtocol.HANDSHAKE}));
+                    flush();
+                }
+            }
+            if (binary) {
+                onBinary(buffer);
+                return;
+            }
+            int start = 0;
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) != '\n') continue;
+                byte[] line = lineBytes(buffer, start, i);
+                start = i + 1;
+                if (line.length > 0) queue(line);
+            }
+            if (start < buffer.limit()) {
+                if (partial == null) partial = new ByteArrayOutputStream();
+                for (int i = start; i < buffer.limit(); i++) partial.write(buffer.get(i));
+                if (partial.size() > MAX_LINE_BYTES) {
+                    System.err.println("Request line too long, closing " + channel);
+                    close();
+                    return;
+                }
+            }
+            pauseIfBehind();
+            schedule();
+        }
+
+        // Every byte is copied once, into the frame it belongs to, and a frame is decoded as soon
+        // as its last byte is in, however many reads it took
+        private void onBinary(ByteBuffer buffer) {
+            try {
+                while (buffer.hasRemaining()) {
+                    int need = BinaryProtocol.HEADER_BYTES;
+                    if (frameBytes >= need) {
+                        int length = BinaryProtocol.getInt(frame, 1);
+                        if (length < 6 || length > BinaryProtocol.MAX_BODY_BYTES) throw new IOException("Bad frame length " + length);
+                        need += length;
+                    }
+                    if (frame == null || frame.length < need) frame = Arrays.copyOf(frame == null ? new byte[0] : frame, Math.max(need, 256));
+                    int take = Math.min(need - frameBytes, buffer.remaining());
+                    buffer.get(frame, frameBytes, take);
+                    frameBytes += take;
+                    if (frameBytes == need && need > BinaryProtocol.HEADER_BYTES) {
+                        queue(BinaryProtocol.decode(frame[0], frame, BinaryProtocol.HEADER_BYTES, need - BinaryProtocol.HEADER_BYTES));
+                        frameBytes = 0;
+                        // Do not keep the room an unusually large frame needed
+                        if (frame.length > READ_BUFFER_BYTES) frame = null;
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println(e.getMessage() + ", closing " + channel);
+                close();
+                return;
+            }
+            pauseIfBehind();
+            schedule();
+        }
+
+        private void queue(Object request) {
+            backlog.incrementAndGet();
+            requests.add(request);
+        }
+
+        // Runs on the event loop after queueing what a read delivered
+        private void pauseIfBehind() {
+            if (!readPaused && backlog.get() > MAX_BACKLOG && key.isValid()) {
+                readPaused = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        // The line with any partial bytes in front of it, trimmed like String.trim
+        private byte[] lineBytes(ByteBuffer buffer, int from, int to) {
+            byte[] bytes;
+            int offset = 0;
+            if (partial != null && partial.size() > 0) {
+                offset = partial.size();
+                bytes = Arrays.copyOf(partial.toByteArray(), offset + (to - from));
+                partial.reset();
+            } else {
+                bytes = new byte[to - from];
+            }
+            buffer.get(from, bytes, offset, to - from);
+            int first = 0;
+            int last = bytes.length;
+            while (first < last && (bytes[first] & 0xFF) <= ' ') first++;
+            while (last > first && (bytes[last - 1] & 0xFF) <= ' ') last--;
+            return first == 0 && last == bytes.length ? bytes : Arrays.copyOfRange(bytes, first, last);
+        }
+
+        // Make sure exactly one worker is draining this connection's requests
+        private void schedule() {
+            if (!requests.isEmpty() && processing.compareAndSet(false, true)) {
+                workers.execute(this::process);
+            }
+        }
+
+        // --max-inflight counts the requests being worked on, as in the threaded server
+        private void process() {
+            Object request;
+            while (!closeAfterFlush && (request = requests.poll()) != null) {
+                boolean permitted = Server.requestPermits == null || Server.requestPermits.tryAcquire();
+                try {
+                    if (request instanceof BinaryProtocol.Frame) {
+                        BinaryProtocol.Frame frame = (BinaryProtocol.Frame) request;
+                        responses.add(ByteBuffer.wrap(permitted ? Server.handleFrame(frame, this) : Server.busy(frame)));
+                        if (frame.code == BinaryProtocol.DISCONNECT) closeAfterFlush = true;
+                    } else {
+                        byte[] line = (byte[]) request;
+                        byte[] cached = permitted ? Server.cachedQueryLine(fastPath, line, 0, line.length) : null;
+                        if (cached != null) {
+                            // Cached bytes are shared, the queue only reads them
+                            responses.add(ByteBuffer.wrap(fastPath.withId(cached)));
+                        } else {
+                            String text = new String(line, StandardCharsets.UTF_8);
+                            String response = permitted ? Server.handleRequest(text, this) : Server.busy(text);
+                            responses.add(ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8)));
+                            if (Server.endsSession(response)) closeAfterFlush = true;
+                        }
+                    }
+                } catch (Exception e) {
+                    // Same as the threaded server: a malformed request ends the connection
+                    e.printStackTrace();
+                    loop.execute(this::close);
+                    return;
+                } finally {
+                    if (permitted && Server.requestPermits != null) Server.requestPermits.release();
+                }
+                loop.execute(this::flush);
+            }
+            processing.set(false);
+            // A line may have arrived between the last poll and clearing the flag
+            if (!closeAfterFlush) schedule();
+        }
+
+        // Pushed events share the response queue, so they never land inside a response. Reads
+        // pausing does not stop events, so a client this far behind is cut off instead.
+        @Override
+        public void invalidate(String word) throws IOException {
+            if (!channel.isOpen()) throw new IOException("Client connection closed");
+            if (backlog.get() > 2 * MAX_BACKLOG) throw new IOException("Client is not reading its events");
+            backlog.incrementAndGet();
+            byte[] event = binary
+                    ? BinaryProtocol.encode(BinaryProtocol.INVALIDATE, 0, word)
+                    : (InvalidationHub.event(word) + "\n").getBytes(StandardCharsets.UTF_8);
+            responses.add(ByteBuffer.wrap(event));
+            loop.execute(this::flush);
+        }
+
+        // Runs on the event loop: write what we can, wait for OP_WRITE for the rest
+        void flush() {
+            if (!channel.isOpen()) return;
+            try {
+                ByteBuffer next;
+                while ((next = responses.peek()) != null) {
+                    channel.write(next);
+                    if (next.hasRemaining()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    responses.poll();
+                    backlog.decrementAndGet();
+                }
+                int ops = key.interestOps() & ~SelectionKey.OP_WRITE;
+                if (readPaused && backlog.get() <= MAX_BACKLOG / 2) {
+                    readPaused = false;
+                    ops |= SelectionKey.OP_READ;
+                }
+                key.interestOps(ops);
+                if (closeAfterFlush) close();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        // Also how the hub cuts off a subscriber that fell behind
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                Server.metrics.connectionClosed();
+                if (Server.connectionPermits != null) Server.connectionPermits.release();
+            }
+            Server.invalidations.unsubscribe(this);
+            Server.peers.remove(this);
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
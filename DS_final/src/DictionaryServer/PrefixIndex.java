@@ -0,0 +1,37 @@
+package DictionaryServer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Sorted view of every headword for autocomplete. A skip list keeps the words in order and lets
+// lookups run while words are added or removed, without any lock shared with the writers.
+final class PrefixIndex {
+    private final ConcurrentSkipListSet<String> words = new ConcurrentSkipListSet<>();
+
+    void add(String word) {
+        words.add(word);
+    }
+
+    void remove(String word) {
+        words.remove(word);
+    }
+
+    // Live sorted view, shared with the fuzzy matcher
+    NavigableSet<String> words() {
+        return words;
+    }
+
+    void addAll(Collection<String> all) {
+        words.addAll(all);
+    }
+
+    // First `limit` words, in alphabetical order, that start with the prefix
+    List<String> complete(String prefix, int limit) {
+        List<String> matches = new ArrayList<>(Math.min(limit, 16));
+        for (String word : words.tailSet(prefix)) {
+            if (matches.size() >= limit || !word.startsWith(prefix)) break;
+            matches.add(word);
+        }
+        return matches;
+    }
+}
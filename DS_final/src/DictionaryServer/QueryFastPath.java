@@ -0,0 +1,185 @@
+package DictionaryServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+// Recognises the plain {"request":"query","word":"..."} line (keys in any order, optionally
+// with an "id") straight from the bytes the connection read, without building a String for the
+// line or a JSONObject. Anything it is not sure about (escapes, other keys, repeated keys,
+// non-letter words, unusual ids) is left to the general JSON path, so answers never differ.
+// One instance per connection; it keeps the spans of the last line it parsed.
+final class QueryFastPath {
+    private static final byte[] REQUEST = "request".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WORD = "word".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ID = "id".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] QUERY = "query".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ID_FIELD = ",\"id\":".getBytes(StandardCharsets.US_ASCII);
+    // Longest integer id copied as is; longer ones go through JSONObject like everything else
+    private static final int MAX_ID_DIGITS = 18;
+
+    private byte[] line;
+    private int wordStart, wordEnd;
+    private int idStart, idEnd;
+    private final byte[] lowered = new byte[64];
+
+    boolean parse(byte[] bytes, int from, int to) {
+        line = bytes;
+        wordStart = wordEnd = idStart = idEnd = -1;
+        boolean query = false;
+        int p = skipSpace(bytes, from, to);
+        if (p == to || bytes[p] != '{') return false;
+        p = skipSpace(bytes, p + 1, to);
+        while (true) {
+            if (p == to || bytes[p] != '"') return false;
+            int keyStart = p + 1;
+            int keyEnd = endOfString(bytes, keyStart, to);
+            if (keyEnd < 0) return false;
+            p = skipSpace(bytes, keyEnd + 1, to);
+            if (p == to || bytes[p] != ':') return false;
+            p = skipSpace(bytes, p + 1, to);
+            if (p == to) return false;
+            int valueStart = p;
+            int valueEnd;
+            if (bytes[p] == '"') {
+                valueEnd = endOfString(bytes, p + 1, to);
+                if (valueEnd < 0) return false;
+                valueEnd++;
+            } else {
+                valueEnd = endOfInteger(bytes, p, to);
+                if (valueEnd < 0) return false;
+            }
+            boolean quoted = bytes[valueStart] == '"';
+            if (is(bytes, keyStart, keyEnd, REQUEST)) {
+                if (query || !quoted || !equalsIgnoreCase(bytes, valueStart + 1, valueEnd - 1, QUERY)) return false;
+                query = true;
+            } else if (is(bytes, keyStart, keyEnd, WORD)) {
+                if (wordStart >= 0 || !quoted || !letters(bytes, valueStart + 1, valueEnd - 1)) return false;
+                wordStart = valueStart + 1;
+                wordEnd = valueEnd - 1;
+            } else if (is(bytes, keyStart, keyEnd, ID)) {
+                if (idStart >= 0 || (quoted && !plainId(bytes, valueStart + 1, valueEnd - 1))) return false;
+                idStart = valueStart;
+                idEnd = valueEnd;
+            } else {
+                return false;
+            }
+            p = skipSpace(bytes, valueEnd, to);
+            if (p == to) return false;
+            if (bytes[p] == '}') break;
+            if (bytes[p] != ',') return false;
+            p = skipSpace(bytes, p + 1, to);
+        }
+        return query && wordStart >= 0 && skipSpace(bytes, p + 1, to) == to;
+    }
+
+    // The word of the last parsed line in lower case, the one String a cached query costs
+    String word() {
+        int length = wordEnd - wordStart;
+        byte[] target = length <= lowered.length ? lowered : new byte[length];
+        for (int i = 0; i < length; i++) {
+            byte b = line[wordStart + i];
+            target[i] = b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+        }
+        return new String(target, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    // Write a response line ("{...}\n") for the last parsed line, with its id echoed if it had one
+    void write(byte[] response, OutputStream out) throws IOException {
+        if (idStart < 0) {
+            out.write(response);
+            return;
+        }
+        out.write(response, 0, response.length - 2);
+        out.write(ID_FIELD);
+        out.write(line, idStart, idEnd - idStart);
+        out.write('}');
+        out.write('\n');
+    }
+
+    // Same as write(), for front ends that queue each response as its own array
+    byte[] withId(byte[] response) {
+        if (idStart < 0) return response;
+        int idLength = idEnd - idStart;
+        byte[] result = new byte[response.length + ID_FIELD.length + idLength];
+        int p = response.length - 2;
+        System.arraycopy(response, 0, result, 0, p);
+        System.arraycopy(ID_FIELD, 0, result, p, ID_FIELD.length);
+        p += ID_FIELD.length;
+        System.arraycopy(line, idStart, result, p, idLength);
+        p += idLength;
+        result[p++] = '}';
+        result[p] = '\n';
+        return result;
+    }
+
+    // Same rule as addWord: only letters
+    static boolean letters(CharSequence word) {
+        if (word.length() == 0) return false;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')) return false;
+        }
+        return true;
+    }
+
+    private static boolean letters(byte[] bytes, int from, int to) {
+        if (from == to) return false;
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (!(b >= 'a' && b <= 'z') && !(b >= 'A' && b <= 'Z')) return false;
+        }
+        return true;
+    }
+
+    // String ids that JSONObject would print back exactly as they were sent
+    private static boolean plainId(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b < 0x20 || b > 0x7E || b == '/') return false;
+        }
+        return true;
+    }
+
+    // Index of the closing quote, or -1 if the string has escapes or never ends
+    private static int endOfString(byte[] bytes, int p, int to) {
+        for (; p < to; p++) {
+            if (bytes[p] == '"') return p;
+            if (bytes[p] == '\\') return -1;
+        }
+        return -1;
+    }
+
+    // End of a plain non-negative integer (no sign, leading zeros, fraction or exponent), or -1
+    private static int endOfInteger(byte[] bytes, int p, int to) {
+        int start = p;
+        while (p < to && bytes[p] >= '0' && bytes[p] <= '9') p++;
+        int length = p - start;
+        if (length == 0 || length > MAX_ID_DIGITS || (length > 1 && bytes[start] == '0')) return -1;
+        if (p < to && (bytes[p] == '.' || bytes[p] == 'e' || bytes[p] == 'E')) return -1;
+        return p;
+    }
+
+    private static int skipSpace(byte[] bytes, int p, int to) {
+        while (p < to && (bytes[p] == ' ' || bytes[p] == '\t' || bytes[p] == '\r')) p++;
+        return p;
+    }
+
+    private static boolean is(byte[] bytes, int from, int to, byte[] expected) {
+        if (to - from != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[from + i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(byte[] bytes, int from, int to, byte[] expected) {
+        if (to - from != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            int b = bytes[from + i];
+            if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            if (b != expected[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,267 @@
+package DictionaryServer;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.json.*;
+
+// The primary's end of replication. The write-ahead log ships every record here in LSN order;
+// the latest `capacity` of them stay in a ring so replicas can be served from memory. Each
+// replica gets a thread that streams the ring to it as JSON lines:
+//
+//   replica -> primary   {"id":"<history>","lsn":N}                    once, then {"ack":N} as it applies
+//   primary -> replica   {"mode":"stream"|"snapshot","id":...,"lsn":S,"port":P}
+//                        snapshot only: {"word":...,"meanings":[...]} per word, then {"end":true}
+//                        {"lsn":n,"word":...,"meanings":[...],"time":t}  (no meanings: removed)
+//                        {"lsn":last,"time":t} as a heartbeat when there is nothing to send
+//
+// A replica of the same history whose next record is still in the ring just continues; any
+// other replica first gets a snapshot of the whole dictionary taken at LSN S, then the records
+// after S. Records are whole word states, so one applied on top of a newer snapshot is harmless.
+final class ReplicationPrimary implements WriteAheadLog.Shipper {
+    private static final long HEARTBEAT_MILLIS = 1000;
+    private static final int MAX_BATCH = 1024;
+
+    private final String historyId;
+    private final int clientPort;
+    private final DictionaryStore dictionary;
+    private final Record[] ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    // Lowest LSN still in the ring and the last one shipped; guarded by lock
+    private long first;
+    private long last;
+    private final List<Session> sessions = new CopyOnWriteArrayList<>();
+
+    private static final class Record {
+        final long lsn;
+        final String word;
+        final String[] meanings;
+        final long time = System.currentTimeMillis();
+        // Encoded once, by whichever session gets to it first
+        private volatile byte[] line;
+
+        Record(long lsn, String word, String[] meanings) {
+            this.lsn = lsn;
+            this.word = word;
+            this.meanings = meanings;
+        }
+
+        byte[] line() {
+            byte[] encoded = line;
+            if (encoded == null) {
+                JSONObject json = new JSONObject().put("lsn", lsn).put("word", word).put("time", time);
+                if (meanings != null) json.put("meanings", new JSONArray(Arrays.asList(meanings)));
+                encoded = line = (json + "\n").getBytes(StandardCharsets.UTF_8);
+            }
+            return encoded;
+        }
+    }
+
+    ReplicationPrimary(String historyId, long lsn, int capacity, int clientPort, DictionaryStore dictionary) {
+        this.historyId = historyId;
+        this.clientPort = clientPort;
+        this.dictionary = dictionary;
+        this.ring = new Record[capacity];
+        this.first = lsn + 1;
+        this.last = lsn;
+    }
+
+    @Override
+    public void ship(long lsn, String word, String[] meanings) {
+        lock.lock();
+        try {
+            ring[(int) (lsn % ring.length)] = new Record(lsn, word, meanings);
+            last = lsn;
+            if (last - first >= ring.length) first = last - ring.length + 1;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Accept replicas on the port, each on its own daemon thread
+    void listen(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port);
+        System.out.println("Replication is listening on port " + port);
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                try {
+                    Socket socket = server.accept();
+                    Thread session = new Thread(() -> new Session(socket).run(), "replication-" + socket.getRemoteSocketAddress());
+                    session.setDaemon(true);
+                    session.start();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    JSONObject toJson() {
+        JSONArray replicas = new JSONArray();
+        long lastLsn;
+        lock.lock();
+        try {
+            lastLsn = last;
+        } finally {
+            lock.unlock();
+        }
+        for (Session session : sessions) {
+            replicas.put(new JSONObject()
+                    .put("address", session.address)
+                    .put("mode", session.mode)
+                    .put("ackedLsn", session.acked)
+                    .put("lagRecords", Math.max(0, lastLsn - session.acked)));
+        }
+        return new JSONObject().put("role", "primary").put("id", historyId).put("lsn", lastLsn).put("replicas", replicas);
+    }
+
+    // Records from `from` on, waiting up to the heartbeat interval for one to arrive. Null when
+    // `from` has already left the ring and the replica has to start over from a snapshot.
+    private List<Record> recordsFrom(long from) throws InterruptedException {
+        lock.lock();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS);
+            while (from > last) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return Collections.emptyList();
+                appended.awaitNanos(remaining);
+            }
+            if (from < first) return null;
+            List<Record> records = new ArrayList<>((int) Math.min(MAX_BATCH, last - from + 1));
+            for (long lsn = from; lsn <= last && records.size() < MAX_BATCH; lsn++) {
+                records.add(ring[(int) (lsn % ring.length)]);
+            }
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long lastLsn() {
+        lock.lock();
+        try {
+            return last;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean inRing(long lsn) {
+        lock.lock();
+        try {
+            return lsn >= first && lsn <= last + 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private final class Session {
+        private final Socket socket;
+        final String address;
+        volatile String mode = "connecting";
+        volatile long acked;
+
+        Session(Socket socket) {
+            this.socket = socket;
+            this.address = String.valueOf(socket.getRemoteSocketAddress());
+        }
+
+        void run() {
+            sessions.add(this);
+            try (Socket s = socket) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream out = new BufferedOutputStream(s.getOutputStream(), 64 * 1024);
+                JSONObject hello = new JSONObject(in.readLine());
+                acked = hello.optLong("lsn");
+                Thread acks = new Thread(() -> readAcks(in), "replication-acks");
+                acks.setDaemon(true);
+                acks.start();
+
+                long next = acked + 1;
+                boolean resume = historyId.equals(hello.optString("id")) && inRing(next);
+                if (resume) {
+                    out.write(header("stream", acked));
+                } else {
+                    next = sendSnapshot(out) + 1;
+                }
+                mode = "streaming";
+                System.out.println("Replica " + address + (resume ? " resumed at LSN " : " streaming from LSN ") + next);
+                while (true) {
+                    List<Record> records = recordsFrom(next);
+                    if (records == null) {
+                        // Fell behind the ring; it reconnects and gets a fresh snapshot
+                        System.err.println("Replica " + address + " fell behind the replication backlog");
+                        return;
+                    }
+                    if (records.isEmpty()) {
+                        out.write((new JSONObject().put("lsn", lastLsn()).put("time", System.currentTimeMillis()) + "\n")
+                                .getBytes(StandardCharsets.UTF_8));
+                    }
+                    for (Record record : records) out.write(record.line());
+                    out.flush();
+                    next += records.size();
+                }
+            } catch (IOException | JSONException | InterruptedException e) {
+                System.err.println("Replica " + address + " disconnected: " + e.getMessage());
+            } finally {
+                sessions.remove(this);
+            }
+        }
+
+        // The whole dictionary as of the returned LSN, from a view taken right after reading it.
+        // A change is shipped only once it is in the store, so every change up to that LSN is in
+        // the view, and every change the view leaves out comes later in the stream. One made before
+        // the view but shipped after the LSN is sent again, which whole-word records make harmless.
+        private long sendSnapshot(OutputStream out) throws IOException {
+            mode = "snapshot";
+            long at = lastLsn();
+            try (DictionaryStore.View view = dictionary.snapshot()) {
+                out.write(header("snapshot", at));
+                sendWords(view, out);
+            }
+            out.write("{\"end\":true}\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            return at;
+        }
+
+        private void sendWords(DictionaryStore.View view, OutputStream out) throws IOException {
+            IOException[] failure = {null};
+            view.forEach((word, meanings) -> {
+                if (failure[0] != null) return;
+                try {
+                    out.write((new JSONObject().put("word", word).put("meanings", new JSONArray(Arrays.asList(meanings))) + "\n")
+                            .getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+        }
+
+        private byte[] header(String mode, long lsn) {
+            return (new JSONObject().put("mode", mode).put("id", historyId).put("lsn", lsn).put("port", clientPort) + "\n")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+
+        private void readAcks(BufferedReader in) {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    acked = new JSONObject(line).optLong("ack", acked);
+                }
+            } catch (IOException | JSONException e) {
+                // The session notices the broken socket on its next write
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package DictionaryServer;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.json.*;
+
+// A read-only server's end of replication: follows the primary's stream (see ReplicationPrimary)
+// on a daemon thread and applies it through the Server, reconnecting whenever the connection
+// drops. It asks to continue from the last LSN this server has logged, so a restarted replica
+// catches up from its own snapshot and log, and only needs a full snapshot when the primary no
+// longer holds the records it is missing.
+final class ReplicationReplica {
+    private static final long RETRY_MILLIS = 1000;
+
+    private final String host;
+    private final int port;
+    // Where clients are sent to make changes: as configured, or the primary's client port on `host`
+    private final String configuredPrimary;
+    private volatile String primaryAddress;
+    private volatile boolean connected;
+    private volatile long appliedLsn;
+    private volatile long primaryLsn;
+    // Primary's clock when it queued the last change applied here
+    private volatile long appliedTime;
+
+    ReplicationReplica(String primary, String configuredPrimary) {
+        int colon = primary.lastIndexOf(':');
+        this.host = primary.substring(0, colon);
+        this.port = Integer.parseInt(primary.substring(colon + 1).trim());
+        this.configuredPrimary = configuredPrimary;
+        this.primaryAddress = configuredPrimary;
+    }
+
+    void start(long lsn) {
+        appliedLsn = primaryLsn = lsn;
+        Thread follower = new Thread(() -> {
+            while (true) {
+                try {
+                    follow();
+                } catch (IOException | JSONException e) {
+                    System.err.println("Replication from " + host + ":" + port + " interrupted: " + e.getMessage());
+                }
+                connected = false;
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "replication-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    String primaryAddress() {
+        return primaryAddress;
+    }
+
+    private void follow() throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 64 * 1024);
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            out.write(new JSONObject().put("id", Server.replicationId()).put("lsn", appliedLsn) + "\n");
+            out.flush();
+            JSONObject header = new JSONObject(readLine(in));
+            if (configuredPrimary == null) primaryAddress = host + ":" + header.getInt("port");
+            connected = true;
+            if ("snapshot".equals(header.getString("mode"))) {
+                long start = System.nanoTime();
+                Set<String> words = new HashSet<>();
+                JSONObject entry;
+                while (!(entry = new JSONObject(readLine(in))).has("end")) {
+                    String word = entry.getString("word");
+                    Server.replaceFromPrimary(word, meanings(entry));
+                    words.add(word);
+                }
+                long lsn = header.getLong("lsn");
+                Server.adoptSnapshot(header.getString("id"), lsn, words);
+                appliedLsn = primaryLsn = lsn;
+                appliedTime = System.currentTimeMillis();
+                System.out.printf("Took a snapshot of %d words at LSN %d from the primary in %d ms.%n", words.size(), lsn,
+                        (System.nanoTime() - start) / 1_000_000);
+            }
+            CompletableFuture<Void> logged = CompletableFuture.completedFuture(null);
+            while (true) {
+                JSONObject record = new JSONObject(readLine(in));
+                long lsn = record.getLong("lsn");
+                if (record.has("word")) {
+                    logged = Server.applyFromPrimary(lsn, record.getString("word"), meanings(record));
+                    appliedLsn = lsn;
+                    appliedTime = record.optLong("time");
+                }
+                primaryLsn = Math.max(primaryLsn, lsn);
+                // Acknowledge once the records that already arrived are applied and in our own
+                // log. Group commit completes them in order, so waiting for the last one is enough.
+                if (!in.ready()) {
+                    try {
+                        logged.join();
+                    } catch (CompletionException e) {
+                        throw new IOException("Could not log the changes: " + e.getCause().getMessage());
+                    }
+                    out.write("{\"ack\":" + appliedLsn + "}\n");
+                    out.flush();
+                }
+            }
+        }
+    }
+
+    private static String readLine(BufferedReader in) throws IOException {
+        String line = in.readLine();
+        if (line == null) throw new EOFException("Primary closed the connection");
+        return line;
+    }
+
+    // Null when the record removes the word
+    private static String[] meanings(JSONObject record) {
+        JSONArray array = record.optJSONArray("meanings");
+        if (array == null) return null;
+        String[] meanings = new String[array.length()];
+        for (int i = 0; i < meanings.length; i++) meanings[i] = array.getString(i);
+        return meanings;
+    }
+
+    // Lag in records, and in time by the primary's clock: how old the newest change applied here
+    // is while changes after it are still on their way, 0 when caught up
+    JSONObject toJson() {
+        long applied = appliedLsn;
+        long behind = Math.max(0, primaryLsn - applied);
+        return new JSONObject()
+                .put("role", "replica")
+                .put("primary", primaryAddress == null ? host + ":" + port : primaryAddress)
+                .put("connected", connected)
+                .put("appliedLsn", applied)
+                .put("primaryLsn", primaryLsn)
+                .put("lagRecords", behind)
+                .put("lagMillis", behind == 0 ? 0 : Math.max(0, System.currentTimeMillis() - appliedTime));
+    }
+}
@@ -0,0 +1,79 @@
+package DictionaryServer;
+
+import java.util.*;
+import org.json.*;
+
+// Outcome of one dictionary operation. The operations build one of these and each protocol
+// encodes it in its own way, so JSON and binary clients always get the same answer.
+final class Reply {
+    final boolean success;
+    final String word;                   // null when the request had no usable word
+    final String message;                // null on a query hit
+    final Collection<String> meanings;   // only set on a query hit
+    final Collection<String> words;      // only set on a prefix lookup or search
+    final Collection<String> suggestions; // close matches offered on a query miss
+
+    private Reply(boolean success, String word, String message, Collection<String> meanings, Collection<String> words,
+                  Collection<String> suggestions) {
+        this.success = success;
+        this.word = word;
+        this.message = message;
+        this.meanings = meanings;
+        this.words = words;
+        this.suggestions = suggestions;
+    }
+
+    static Reply success(String word, String message) {
+        return new Reply(true, word, message, null, null, null);
+    }
+
+    static Reply error(String word, String message) {
+        return new Reply(false, word, message, null, null, null);
+    }
+
+    static Reply notFound(String word, Collection<String> suggestions) {
+        return new Reply(false, word, "Word not found.", null, null, suggestions);
+    }
+
+    static Reply meanings(String word, Collection<String> meanings) {
+        return new Reply(true, word, null, meanings, null, null);
+    }
+
+    static Reply words(String prefix, Collection<String> words) {
+        return new Reply(true, prefix, null, null, words, null);
+    }
+
+    String toJson() {
+        JSONObject json = new JSONObject();
+        if (word != null) json.put("word", word);
+        json.put("status", success ? "success" : "error");
+        if (meanings != null) {
+            json.put("meanings", new JSONArray(meanings));
+        } else if (words != null) {
+            json.put("words", new JSONArray(words));
+        } else {
+            json.put("message", message);
+            if (suggestions != null) json.put("suggestions", new JSONArray(suggestions));
+        }
+        return json.toString();
+    }
+
+    // Binary reply fields: word, message, then the meanings (or the words of a prefix lookup or
+    // search, or the suggestions of a query miss)
+    String[] toFields() {
+        Collection<String> meanings = this.meanings != null ? this.meanings : words != null ? words : suggestions;
+        int count = meanings == null ? 0 : meanings.size();
+        String[] fields = new String[2 + count];
+        fields[0] = word == null ? "" : word;
+        fields[1] = message == null ? "" : message;
+        if (meanings != null) {
+            int i = 2;
+            for (String meaning : meanings) {
+                if (i == fields.length) break;
+                fields[i++] = meaning;
+            }
+            if (i < fields.length) return Arrays.copyOf(fields, i);
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,87 @@
+package DictionaryServer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import DictionaryProtocol.BinaryProtocol;
+
+// Query hits already encoded for both protocols, so a popular word is not turned into a
+// JSONObject and serialized again on every lookup. The number of words is bounded; once full,
+// a new word only gets in if the frequency sketch says it is asked for more often than the
+// entry it would replace (TinyLFU admission), so one-off lookups cannot flush the hot words.
+//
+// A mutation bumps the version of the word's stripe and then drops the entry. A lookup reads
+// the stripe version before it reads the dictionary and only stores its encoding if the
+// version has not moved, so an encoding of the old meanings can never outlive the change.
+final class ResponseCache {
+    private static final int STRIPES = 64;
+
+    static final class Entry {
+        final String json;
+        final byte[] jsonLine;   // json + "\n" in UTF-8, for front ends that write bytes
+        final byte[] frame;      // encoded with id 0
+
+        Entry(String json, byte[] frame) {
+            this.json = json;
+            this.jsonLine = (json + "\n").getBytes(StandardCharsets.UTF_8);
+            this.frame = frame;
+        }
+    }
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final FrequencySketch sketch;
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    // Clock hand over the entries, picking the next eviction candidate
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private Iterator<String> hand;
+
+    ResponseCache(int capacity) {
+        this.capacity = capacity;
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    Entry get(String word) {
+        sketch.increment(word);
+        return entries.get(word);
+    }
+
+    // Read before looking the word up in the dictionary, and hand back to offer()
+    long version(String word) {
+        return versions.get(stripe(word));
+    }
+
+    void offer(String word, long version, Reply reply) {
+        if (entries.size() >= capacity && !makeRoomFor(word)) return;
+        Entry entry = new Entry(reply.toJson(), Server.encodeReply(0, reply));
+        int stripe = stripe(word);
+        entries.compute(word, (w, current) -> versions.get(stripe) == version ? entry : current);
+    }
+
+    // Called after the dictionary has changed the word
+    void invalidate(String word) {
+        versions.incrementAndGet(stripe(word));
+        entries.remove(word);
+    }
+
+    private boolean makeRoomFor(String word) {
+        // Somebody else is already evicting; skipping one admission costs nothing
+        if (!evictionLock.tryLock()) return false;
+        try {
+            if (hand == null || !hand.hasNext()) hand = entries.keySet().iterator();
+            if (!hand.hasNext()) return true;
+            String victim = hand.next();
+            if (sketch.frequency(word) <= sketch.frequency(victim)) return false;
+            entries.remove(victim);
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static int stripe(String word) {
+        return (word.hashCode() & 0x7fffffff) % STRIPES;
+    }
+}
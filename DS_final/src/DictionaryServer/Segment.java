@@ -0,0 +1,224 @@
+package DictionaryServer;
+
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// One immutable, sorted run of dictionary entries in a memory-mapped file. Nothing is decoded
+// when a segment is opened; a lookup binary-searches the offset table at the end of the file,
+// comparing UTF-8 bytes in place, and only turns the one matching entry into Strings. The
+// bytes live in the page cache rather than on the heap, so the dictionary can be far larger
+// than the heap and the garbage collector never has to trace it.
+//
+//   file:   "DSEG" u32 version | entry... | u32 offset per entry | u32 tableOffset u32 count "DSEG"
+//   entry:  u16 length + UTF-8 word, u16 count, count x (u32 length + UTF-8 meaning)
+//
+// Entries are sorted by the unsigned bytes of their UTF-8 word. A segment is at most
+// MAX_SEGMENT_BYTES so a single mapping can cover it; larger dictionaries use several.
+final class Segment {
+    private static final int MAGIC = 0x44534547;   // "DSEG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int TRAILER_BYTES = 12;
+    static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    final Path path;
+    private final MappedByteBuffer data;
+    private final int count;
+    private final int table;
+    private final byte[] first;
+    private final byte[] last;
+
+    private Segment(Path path, MappedByteBuffer data) throws IOException {
+        this.path = path;
+        this.data = data;
+        int size = data.capacity();
+        if (size < HEADER_BYTES + TRAILER_BYTES || data.getInt(0) != MAGIC || data.getInt(4) != VERSION
+                || data.getInt(size - 4) != MAGIC) {
+            throw new IOException("Not a dictionary segment: " + path);
+        }
+        this.table = data.getInt(size - TRAILER_BYTES);
+        this.count = data.getInt(size - TRAILER_BYTES + 4);
+        if (table < HEADER_BYTES || (long) table + 4L * count != size - TRAILER_BYTES) {
+            throw new IOException("Segment " + path + " has a damaged offset table");
+        }
+        this.first = count == 0 ? null : wordAt(0);
+        this.last = count == 0 ? null : wordAt(count - 1);
+    }
+
+    static Segment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data.order(ByteOrder.BIG_ENDIAN);
+            return new Segment(path, data);
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    // Meanings of the word, or null if this segment does not have it
+    String[] get(byte[] word) {
+        if (count == 0 || compare(word, first) < 0 || compare(word, last) > 0) return null;
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int at = offset(mid);
+            int cmp = compareAt(at, word);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return meaningsAt(at + 2 + (data.getShort(at) & 0xFFFF));
+            }
+        }
+        return null;
+    }
+
+    // Walks the entries in order
+    final class Cursor {
+        private int next;
+        byte[] word;
+        String[] meanings;
+
+        boolean advance() {
+            if (next == count) return false;
+            int at = offset(next++);
+            word = wordAt(at, data.getShort(at) & 0xFFFF);
+            meanings = meaningsAt(at + 2 + word.length);
+            return true;
+        }
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    private int offset(int index) {
+        return data.getInt(table + 4 * index);
+    }
+
+    private byte[] wordAt(int index) {
+        int at = offset(index);
+        return wordAt(at, data.getShort(at) & 0xFFFF);
+    }
+
+    private byte[] wordAt(int at, int length) {
+        byte[] word = new byte[length];
+        data.get(at + 2, word);
+        return word;
+    }
+
+    // Unsigned comparison of the stored word at `at` with `word`, without copying it out
+    private int compareAt(int at, byte[] word) {
+        int length = data.getShort(at) & 0xFFFF;
+        int n = Math.min(length, word.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (data.get(at + 2 + i) & 0xFF) - (word[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return length - word.length;
+    }
+
+    private String[] meaningsAt(int at) {
+        String[] meanings = new String[data.getShort(at) & 0xFFFF];
+        at += 2;
+        for (int i = 0; i < meanings.length; i++) {
+            int length = data.getInt(at);
+            byte[] bytes = new byte[length];
+            data.get(at + 4, bytes);
+            meanings[i] = new String(bytes, StandardCharsets.UTF_8);
+            at += 4 + length;
+        }
+        return meanings;
+    }
+
+    static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    static byte[] utf8(String word) {
+        return word.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Writes sorted entries into as many segment files as needed, each named by `paths`
+    static final class Writer implements Closeable {
+        private final Iterator<Path> paths;
+        private final List<Path> written = new ArrayList<>();
+        private FileOutputStream file;
+        private DataOutputStream out;
+        private long position;
+        private int[] offsets = new int[1024];
+        private int count;
+
+        Writer(Iterator<Path> paths) {
+            this.paths = paths;
+        }
+
+        void add(byte[] word, String[] meanings) throws IOException {
+            if (word.length > 0xFFFF || meanings.length > 0xFFFF) {
+                throw new IOException(new String(word, StandardCharsets.UTF_8) + " is too large for a segment");
+            }
+            byte[][] encoded = new byte[meanings.length][];
+            long size = 4 + 2 + word.length + 2;
+            for (int i = 0; i < meanings.length; i++) {
+                encoded[i] = meanings[i].getBytes(StandardCharsets.UTF_8);
+                size += 4 + encoded[i].length;
+            }
+            if (out != null && position + size + 4L * count + TRAILER_BYTES > MAX_SEGMENT_BYTES) finish();
+            if (out == null) start();
+            if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+            offsets[count++] = (int) position;
+            out.writeShort(word.length);
+            out.write(word);
+            out.writeShort(meanings.length);
+            for (byte[] meaning : encoded) {
+                out.writeInt(meaning.length);
+                out.write(meaning);
+            }
+            position += size - 4;
+        }
+
+        // Finishes the last file; returns every file written, in key order
+        List<Path> paths() throws IOException {
+            if (out == null && written.isEmpty()) start();
+            if (out != null) finish();
+            return written;
+        }
+
+        private void start() throws IOException {
+            Path path = paths.next();
+            file = new FileOutputStream(path.toFile());
+            out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            position = HEADER_BYTES;
+            count = 0;
+            written.add(path);
+        }
+
+        private void finish() throws IOException {
+            int table = (int) position;
+            for (int i = 0; i < count; i++) out.writeInt(offsets[i]);
+            out.writeInt(table);
+            out.writeInt(count);
+            out.writeInt(MAGIC);
+            out.flush();
+            file.getFD().sync();
+            out.close();
+            out = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) out.close();
+        }
+    }
+}
@@ -2,30 +2,153 @@ package DictionaryServer;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.net.ServerSocketFactory;
 import org.json.*;
+import DictionaryProtocol.BinaryProtocol;
+import DictionaryProtocol.ChunkCodec;
+import DictionaryProtocol.HashRing;
 
 public class Server {
     // Pre-set necessary port number for connection and listening
     private static final int PORT_NUMBER = 9092;
-    // Using ConcurrentHashMap for looking up the word in dictionary >>> save time complexity
-    private static Map<String, Set<String>> dictionary = new ConcurrentHashMap<>();
+    // Using ConcurrentHashMap for looking up the word in dictionary >>> save time complexity;
+    // every change is one atomic step per word that also updates the indexes below
+    private static final DictionaryStore dictionary = new DictionaryStore(Server::reindex);
+    // Sorted copy of the headwords for "prefix" lookups, kept in step with the dictionary
+    private static final PrefixIndex prefixIndex = new PrefixIndex();
+    private static final int DEFAULT_PREFIX_LIMIT = 10;
+    private static final int MAX_PREFIX_LIMIT = 100;
+    // Tokens of every meaning mapped back to their words, for "search"
+    private static final MeaningIndex meaningIndex = new MeaningIndex();
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_SEARCH_LIMIT = 1000;
+    // "Did you mean" on query misses, walking the same sorted words as the prefix index
+    private static final FuzzyMatcher fuzzyMatcher = new FuzzyMatcher(prefixIndex.words(),
+            word -> dictionary.get(word) != null);
+    private static final int MAX_SUGGESTIONS = 5;
+    private static int suggestDistance = 1;
+    // DP rows plus words one miss may spend on suggestions, see FuzzyMatcher
+    private static int suggestBudget = 5000;
+    // Encoded query hits for the most asked-for words, null when turned off
+    private static ResponseCache responseCache;
+    // Connections that asked to hear about changed words
+    static final InvalidationHub invalidations = new InvalidationHub();
+    // Request counts and latencies, persistence timings; served by "stats" and over JMX
+    static final Metrics metrics = new Metrics();
+    // With --replication-port this server is a primary and streams its log to replicas; with
+    // --replica-of=host:port it is a read-only replica of one. At most one of them is set.
+    private static ReplicationPrimary primary;
+    private static ReplicationReplica replica;
+    // Which primary's history the LSNs in our log belong to, kept in "<dictionaryFile>.replication"
+    private static volatile String replicationId = "";
+    private static final int DEFAULT_REPLICATION_BACKLOG = 100000;
+    // Set once a router gives this server its place in a partitioned deployment ("ring"); words
+    // the ring gives to another node are then refused with code "moved"
+    private static volatile HashRing shardRing;
+    private static volatile String shardName;
+    // Held shared by every mutation from its ownership check until it is applied, and
+    // exclusively while a handoff finishes, so no change slips past it (see dispatchPut for
+    // the puts of other nodes' handoffs)
+    private static final ReentrantReadWriteLock shardLock = new ReentrantReadWriteLock();
+    private static final ReentrantLock reshardLock = new ReentrantLock();
+    // The handoff in progress, told about every change so moved words are sent again
+    private static volatile ShardHandoff handoff;
+    // Writes are held for the end of a handoff once fewer words than this changed during a round
+    private static final int HANDOFF_PAUSE_WORDS = 100;
+    private static final int HANDOFF_CATCH_UP_ROUNDS = 10;
+    // Connections that introduced themselves as another node with "peer"; only they may "put",
+    // which sets a word's whole state without the checks of "add". With --peer-key=secret the
+    // hello has to carry the same key, and every node has to be given it.
+    static final Set<InvalidationHub.Subscriber> peers = ConcurrentHashMap.newKeySet();
+    private static String peerKey;
     // Deal with jason file and make it json-like
     private static String dictionaryFile = "dictionary.json";  // Default dictionary file
+    // With --snapshot=binary checkpoints go to "<dictionaryFile>.snap" instead, see Snapshot;
+    // with --snapshot=segments they merge the recent changes into memory-mapped Segments
+    private static boolean binarySnapshots;
+    private static boolean segmentStorage;
+    // Mutations are appended here instead of rewriting the whole dictionary file each time
+    private static WriteAheadLog log;
+    // Fold the log into a fresh snapshot once it grows past this size
+    private static final long CHECKPOINT_LOG_BYTES = 4L * 1024 * 1024;
+    private static final long CHECKPOINT_INTERVAL_SECONDS = 30;
+    // A ReentrantLock rather than synchronized, so a virtual thread waiting here does not pin its carrier
+    private static final ReentrantLock checkpointLock = new ReentrantLock();
+    // Admission limits shared by every front end, null when unlimited
+    static Semaphore connectionPermits;
+    static Semaphore requestPermits;
+    // Optional "--name=value" flags given after the positional port and dictionary file
+    private static final Map<String, String> options = new HashMap<>();
 
 
     public static void main(String[] args) {
+        int port;
+        try {
+            port = configure(args);
+        } catch (IOException e) {
+            // Carrying on would checkpoint the part that was read over the good files
+            System.err.println("Could not load the dictionary, not starting.");
+            e.printStackTrace();
+            System.exit(1);
+            return;
+        }
+
+        // Ensuring when the connection shut down, the content would be saved in the dictionary automatically
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            checkpoint();
+            System.out.println("Dictionary saved. Server shutting down.");
+        }));
+
+        // Compact the log into a snapshot in the background so request threads only ever append
+        ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dictionary-checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                if (log.size() > CHECKPOINT_LOG_BYTES) checkpoint();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, CHECKPOINT_INTERVAL_SECONDS, CHECKPOINT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        serve(port);
+    }
+
+    // Read the command line and load the dictionary; returns the port to listen on. Split from
+    // main() so the benchmarks can set up a server in their own JVM.
+    static int configure(String[] args) throws IOException {
         int port = PORT_NUMBER;
 
+        // Split "--name=value" flags from the positional arguments
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+            } else {
+                positional.add(arg);
+            }
+        }
+
         // Load dictionary file from command args
-        if(args.length > 0){
+        if(positional.size() > 0){
             try{
-                port = Integer.parseInt(args[0].trim());
+                port = Integer.parseInt(positional.get(0).trim());
                 System.out.println(port);
-                if(args.length > 1){
-                    dictionaryFile = args[1];
+                if(positional.size() > 1){
+                    dictionaryFile = positional.get(1);
                 }
             } catch (NumberFormatException e){
                 System.err.println("Invalid port number, using PORT_NUMBER"+ PORT_NUMBER);
@@ -33,78 +156,199 @@ public class Server {
         }
 
 
+        // Largest edit distance offered as a suggestion on a miss, 0 turns suggestions off
+        suggestDistance = intOption("suggest-distance", suggestDistance);
+        suggestBudget = intOption("suggest-budget", suggestBudget);
+        peerKey = options.get("peer-key");
+        // How many words keep their query response ready-encoded, 0 turns the cache off
+        int cachedWords = intOption("response-cache", 10000);
+        responseCache = cachedWords > 0 ? new ResponseCache(cachedWords) : null;
+        binarySnapshots = "binary".equals(options.get("snapshot"));
+        segmentStorage = "segments".equals(options.get("snapshot"));
         loadDictionary();
+        startReplication(port);
+        metrics.register();
+        return port;
+    }
 
-        // Ensuring when the connection shut down, the content would be saved in the dictionary automatically
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            saveDictionary();
-            System.out.println("Dictionary saved. Server shutting down.");
-        }));
+    // Accept clients on the port until the process ends
+    static void serve(int port) {
+        // Admission limits, 0 means unlimited
+        int maxConnections = intOption("max-connections", 0);
+        int maxInFlight = intOption("max-inflight", 0);
+        connectionPermits = maxConnections > 0 ? new Semaphore(maxConnections) : null;
+        requestPermits = maxInFlight > 0 ? new Semaphore(maxInFlight) : null;
+
+        // Event-loop front end: a few selector threads own all sockets, a small pool runs the requests
+        if ("nio".equals(options.get("mode"))) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            int ioThreads = intOption("io-threads", Math.max(1, cores / 2));
+            int workers = intOption("workers", cores);
+            try {
+                new NioServer(port, ioThreads, workers).run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
 
         // Multithread holding
-        // Create a scalable pool to handle incoming client connection.
-        ExecutorService pool = Executors.newCachedThreadPool();
+        // Create a scalable pool to handle incoming client connection, or one virtual thread per client
+        ExecutorService pool = "virtual".equals(options.get("mode")) ? virtualThreadPool() : Executors.newCachedThreadPool();
         // Socket for listening specific port, and pass to handleClient method once connection established
         try (ServerSocket server = ServerSocketFactory.getDefault().createServerSocket(port)) {
             System.out.println("Server is listening on port " + port);
             while (true) {
                 Socket client = server.accept();
-                pool.execute(() -> handleClient(client));
+                if (connectionPermits != null && !connectionPermits.tryAcquire()) {
+                    metrics.connectionRejected();
+                    reject(client);
+                    continue;
+                }
+                metrics.connectionOpened();
+                pool.execute(() -> {
+                    try {
+                        handleClient(client);
+                    } finally {
+                        if (connectionPermits != null) connectionPermits.release();
+                    }
+                });
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    // Virtual threads need Java 21; look the factory up reflectively so the server still runs on older JVMs
+    private static ExecutorService virtualThreadPool() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Virtual threads are not available on this JVM, using a cached thread pool");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // Over the connection limit: answer once with a structured error and hang up, without spawning a thread
+    static void reject(Socket client) {
+        try (Socket c = client) {
+            c.setSoTimeout(1000);
+            c.getOutputStream().write((BUSY_CONNECTIONS + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Nothing more we can do for this client
+        }
+    }
+
+    private static int intOption(String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for --" + name + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    // Pushes events onto a blocking connection. Cut off by the hub, it closes the socket, which
+    // ends the connection's read loop and any write stuck on the client.
+    private static final class StreamSubscriber implements InvalidationHub.Subscriber {
+        private final Socket client;
+        private final OutputStream output;
+        private final ReentrantLock writeLock;
+        private final boolean binary;
+
+        StreamSubscriber(Socket client, OutputStream output, ReentrantLock writeLock, boolean binary) {
+            this.client = client;
+            this.output = output;
+            this.writeLock = writeLock;
+            this.binary = binary;
+        }
+
+        @Override
+        public void invalidate(String word) throws IOException {
+            byte[] event = binary
+                    ? BinaryProtocol.encode(BinaryProtocol.INVALIDATE, 0, word)
+                    : (InvalidationHub.event(word) + "\n").getBytes(StandardCharsets.UTF_8);
+            writeLock.lock();
+            try {
+                output.write(event);
+                output.flush();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                client.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     // Tackle the action from client requriements
     private static void handleClient(Socket client) {
+        InvalidationHub.Subscriber subscriber = null;
+        // Every write holds it, so pushed events never split a response; not synchronized, which
+        // would pin a virtual thread blocked writing to its carrier
+        ReentrantLock writeLock = new ReentrantLock();
         // Handle the communication between server and client
-        try (BufferedReader input = new BufferedReader(new InputStreamReader(client.getInputStream()));
-             PrintWriter output = new PrintWriter(client.getOutputStream(), true)) {
-
-            // Transfer the format of the content from client side into json
-            String line;
-            while ((line = input.readLine()) != null) {
-                JSONObject request = new JSONObject(line);
-                String action = request.optString("request");
-                String word = request.optString("word");
-                String response;
-
-                // Declare variables outside the switch
-                String newMeaning = null;
-                String oldMeaning = null;
-
-                switch (action.toLowerCase()) {
-                    case "query":
-                        response = queryWord(word);
-                        break;
-                    case "add":
-                        response = addWord(word, request.optJSONArray("meanings"));
-                        break;
-                    case "remove":
-                        response = removeWord(word);
-                        break;
-                    case "addmeaning":
-                        newMeaning = request.optString("meaning");
-                        response = addMeaning(word, newMeaning);
-                        break;
-                    case "updatemeaning":
-                        oldMeaning = request.optString("old");
-                        newMeaning = request.optString("new");
-                        response = updateMeaning(word, oldMeaning, newMeaning);
-                        break;
-                    case "disconnect":
-                        output.println("{\"status\":\"success\",\"message\":\"Disconnected.\"}");
-                        return;
-                    default:
-                        response = "{\"status\":\"error\",\"message\":\"Invalid request type.\"}";
-                }
+        try (BufferedInputStream in = new BufferedInputStream(client.getInputStream());
+             OutputStream out = client.getOutputStream()) {
 
-                output.println(response);
+            // A leading handshake byte selects the binary protocol, anything else is JSON lines
+            in.mark(1);
+            if (in.read() == BinaryProtocol.HANDSHAKE) {
+                BufferedOutputStream output = new BufferedOutputStream(out);
+                subscriber = new StreamSubscriber(client, output, writeLock, true);
+                handleBinaryClient(new DataInputStream(in), output, writeLock, subscriber);
+                return;
+            }
+            in.reset();
+
+            // Lines stay bytes in one reused buffer; plain queries are answered from them directly
+            LineReader input = new LineReader(in);
+            BufferedOutputStream output = new BufferedOutputStream(out);
+            QueryFastPath fastPath = new QueryFastPath();
+            subscriber = new StreamSubscriber(client, output, writeLock, false);
+            while (input.next()) {
+                byte[] line = input.buffer();
+                byte[] cached = null;
+                String response = null;
+                boolean permitted = requestPermits == null || requestPermits.tryAcquire();
+                try {
+                    if (permitted) cached = cachedQueryLine(fastPath, line, input.lineStart(), input.lineEnd());
+                    if (cached == null) {
+                        String request = new String(line, input.lineStart(), input.lineEnd() - input.lineStart(), StandardCharsets.UTF_8);
+                        response = permitted ? handleRequest(request, subscriber) : busy(request);
+                    }
+                } finally {
+                    if (permitted && requestPermits != null) requestPermits.release();
+                }
+                writeLock.lock();
+                try {
+                    if (cached != null) {
+                        fastPath.write(cached, output);
+                    } else {
+                        output.write(response.getBytes(StandardCharsets.UTF_8));
+                        output.write('\n');
+                    }
+                    // Answers to pipelined requests go out together
+                    if (!input.hasBufferedLine()) output.flush();
+                } finally {
+                    writeLock.unlock();
+                }
+                if (response != null && endsSession(response)) return;
             }
         } catch (Exception e) {
             e.printStackTrace();
         } finally{
+            metrics.connectionClosed();
+            invalidations.unsubscribe(subscriber);
+            peers.remove(subscriber);
             try{
                 client.close();
             } catch (IOException e){
@@ -113,127 +357,1018 @@ public class Server {
         }
     }
 
-    // Handle the add meaning logic
-    private static String addMeaning(String word, String newMeaning) {
-        word = word.toLowerCase();
-        if (!dictionary.containsKey(word)) {
-            return new JSONObject().put("word", word).put("status", "error").put("message", "Word not found.").toString();
+    private static void handleBinaryClient(DataInputStream input, BufferedOutputStream output, ReentrantLock writeLock,
+                                           InvalidationHub.Subscriber subscriber) throws IOException {
+        writeLock.lock();
+        try {
+            output.write(BinaryProtocol.HANDSHAKE);
+            output.flush();
+        } finally {
+            writeLock.unlock();
+        }
+        BinaryProtocol.Frame frame;
+        while ((frame = BinaryProtocol.read(input)) != null) {
+            byte[] reply;
+            if (requestPermits == null) {
+                reply = handleFrame(frame, subscriber);
+            } else if (requestPermits.tryAcquire()) {
+                try {
+                    reply = handleFrame(frame, subscriber);
+                } finally {
+                    requestPermits.release();
+                }
+            } else {
+                reply = busy(frame);
+            }
+            writeLock.lock();
+            try {
+                output.write(reply);
+                output.flush();
+            } finally {
+                writeLock.unlock();
+            }
+            if (frame.code == BinaryProtocol.DISCONNECT) return;
         }
+    }
+
+    // Answers for clients turned away by the admission limits
+    static final String BUSY_CONNECTIONS = "{\"status\":\"error\",\"code\":\"overloaded\",\"message\":\"Too many connections, try again later.\"}";
+    static final String BUSY_REQUESTS = "{\"status\":\"error\",\"code\":\"overloaded\",\"message\":\"Server busy, try again later.\"}";
+
+    // Answer to "disconnect"; front ends check for it with endsSession to know when to close
+    static final String DISCONNECTED = "{\"status\":\"success\",\"message\":\"Disconnected.\"}";
+    // Upper bound on operations carried by a single "batch" request
+    private static final int MAX_BATCH_OPS = 10000;
+    // Words per "import" or "export" chunk, and how far a compressed chunk may expand
+    private static final int DEFAULT_CHUNK_ENTRIES = 1000;
+    private static final int MAX_CHUNK_ENTRIES = 10000;
+    private static final int MAX_CHUNK_BYTES = 64 * 1024 * 1024;
+    // Failed entries listed in an import answer; the count covers all of them
+    private static final int MAX_IMPORT_ERRORS = 100;
+    // Set while a batch runs, so its mutations wait for the log once at the end instead of once each
+    private static final ThreadLocal<List<CompletableFuture<Void>>> deferredWrites = new ThreadLocal<>();
+
+    static boolean endsSession(String response) {
+        // withId appends the id at the end, so the disconnect answer keeps its prefix
+        return response.startsWith(DISCONNECTED.substring(0, DISCONNECTED.length() - 1));
+    }
+
+    // Turn one request line into its response line, shared by every front end.
+    // An "id" on the request is echoed on the response so clients can pipeline requests.
+    static String handleRequest(String line) {
+        return handleRequest(line, null);
+    }
 
-        // Check if the word already existed or not
-        Set<String> meanings = dictionary.get(word);
-        if (meanings.contains(newMeaning)) {
-            return new JSONObject().put("word", word).put("status", "error").put("message", "Meaning already exists.").toString();
+    // The subscriber is how this connection receives invalidation events if it asks for them
+    static String handleRequest(String line, InvalidationHub.Subscriber subscriber) {
+        long start = System.nanoTime();
+        // Transfer the format of the content from client side into json
+        JSONObject request = new JSONObject(line);
+        String action = request.optString("request");
+        boolean peer = subscriber != null && peers.contains(subscriber);
+        String response;
+        if ("batch".equalsIgnoreCase(action)) {
+            response = batch(request, peer);
+        } else if ("subscribe".equalsIgnoreCase(action)) {
+            response = subscribe(subscriber).toJson();
+        } else if ("peer".equalsIgnoreCase(action)) {
+            response = peer(request, subscriber).toJson();
+        } else if ("stats".equalsIgnoreCase(action)) {
+            response = new JSONObject().put("status", "success").put("stats", stats()).toString();
+        } else if ("ring".equalsIgnoreCase(action)) {
+            response = reshard(request);
+        } else if ("import".equalsIgnoreCase(action)) {
+            response = importChunk(request);
+        } else if ("export".equalsIgnoreCase(action)) {
+            response = exportChunk(request);
+        } else {
+            response = dispatch(request, peer);
         }
+        // A quote inside a value is escaped, so only the status field itself can match
+        metrics.request(Metrics.Action.of(action), start, response.contains("\"status\":\"error\""));
+        return withId(response, request.opt("id"));
+    }
 
-        meanings.add(newMeaning);
-        saveDictionary();
-        return new JSONObject().put("word", word).put("status", "success").put("message", "Meaning added.").toString();
+    private static JSONObject stats() {
+        JSONObject stats = metrics.toJson();
+        if (primary != null) stats.put("replication", primary.toJson());
+        if (replica != null) stats.put("replication", replica.toJson());
+        HashRing ring = shardRing;
+        if (ring != null) stats.put("shard", new JSONObject().put("node", shardName).put("nodes", ring.toString()));
+        return stats;
     }
 
-    // Handle the logic for updating meaning
-    private static String updateMeaning(String word, String oldMeaning, String newMeaning) {
+    private static Reply subscribe(InvalidationHub.Subscriber subscriber) {
+        if (subscriber == null) return Reply.error(null, "Subscriptions are not available on this connection.");
+        invalidations.subscribe(subscriber);
+        return Reply.success(null, "Subscribed.");
+    }
+
+    // {"request":"peer","key":"..."}, sent by another node's handoff before its puts
+    private static Reply peer(JSONObject request, InvalidationHub.Subscriber connection) {
+        if (connection == null) return Reply.error(null, "Peers are not accepted on this connection.");
+        if (peerKey != null && !MessageDigest.isEqual(peerKey.getBytes(StandardCharsets.UTF_8),
+                request.optString("key").getBytes(StandardCharsets.UTF_8))) {
+            return Reply.error(null, "Wrong peer key.");
+        }
+        peers.add(connection);
+        return Reply.success(null, "Peer accepted.");
+    }
+
+    // Overload answer that still carries the request id when we can find one
+    static String busy(String line) {
+        metrics.busy();
+        try {
+            return withId(BUSY_REQUESTS, new JSONObject(line).opt("id"));
+        } catch (JSONException e) {
+            return BUSY_REQUESTS;
+        }
+    }
+
+    static byte[] busy(BinaryProtocol.Frame frame) {
+        metrics.busy();
+        return encodeReply(frame.id, Reply.error(frame.field(0), "Server busy, try again later."));
+    }
+
+    private static String withId(String response, Object id) {
+        if (id == null) return response;
+        return response.substring(0, response.length() - 1) + ",\"id\":" + JSONObject.valueToString(id) + "}";
+    }
+
+    // Run every op of a batch in order and answer with all of their results in one line.
+    // Mutations are logged as they go but only waited on once, after the last op.
+    private static String batch(JSONObject request, boolean peer) {
+        JSONArray ops = request.optJSONArray("ops");
+        if (ops == null) {
+            return "{\"status\":\"error\",\"message\":\"Batch needs an ops array.\"}";
+        }
+        if (ops.length() > MAX_BATCH_OPS) {
+            return "{\"status\":\"error\",\"message\":\"Batch is limited to " + MAX_BATCH_OPS + " ops.\"}";
+        }
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        StringBuilder results = new StringBuilder("{\"status\":\"success\",\"results\":[");
+        deferredWrites.set(writes);
+        try {
+            for (int i = 0; i < ops.length(); i++) {
+                if (i > 0) results.append(',');
+                JSONObject op = ops.optJSONObject(i);
+                String action = op == null ? "" : op.optString("request");
+                if (op == null || action.equalsIgnoreCase("batch") || action.equalsIgnoreCase("disconnect")) {
+                    results.append("{\"status\":\"error\",\"message\":\"Invalid request type.\"}");
+                } else {
+                    results.append(withId(dispatch(op, peer), op.opt("id")));
+                }
+            }
+        } finally {
+            deferredWrites.remove();
+        }
+        try {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            e.printStackTrace();
+            return "{\"status\":\"error\",\"message\":\"Changes could not be saved.\"}";
+        }
+        return results.append("]}").toString();
+    }
+
+    // {"request":"import","entries":{"word":["meaning",...],...}} (or compressed, see ChunkCodec)
+    // adds every entry with the same checks as "add"; with "mode":"replace" an entry sets the
+    // word's meanings whether or not it existed. The chunk waits for the log once at the end
+    // rather than once per word. Failed entries are counted and listed; the rest still go in.
+    private static String importChunk(JSONObject request) {
+        if (replica != null) {
+            return new JSONObject().put("status", "error").put("code", "read_only")
+                    .put("message", "Read-only replica, send changes to the primary.")
+                    .put("primary", replica.primaryAddress()).toString();
+        }
+        JSONObject entries;
+        try {
+            entries = chunkEntries(request);
+        } catch (IOException | JSONException e) {
+            return Reply.error(null, "Bad import chunk: " + e.getMessage()).toJson();
+        }
+        if (entries == null) return Reply.error(null, "Import needs entries.").toJson();
+        if (entries.length() > MAX_CHUNK_ENTRIES) {
+            return Reply.error(null, "Import is limited to " + MAX_CHUNK_ENTRIES + " entries per chunk.").toJson();
+        }
+        boolean replace = "replace".equalsIgnoreCase(request.optString("mode"));
+        int imported = 0;
+        int failed = 0;
+        JSONArray errors = new JSONArray();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        deferredWrites.set(writes);
+        shardLock.readLock().lock();
+        try {
+            for (String word : entries.keySet()) {
+                Reply reply = importEntry(word, toList(entries.optJSONArray(word)), replace);
+                if (reply.success) {
+                    imported++;
+                } else if (failed++ < MAX_IMPORT_ERRORS) {
+                    errors.put(new JSONObject().put("word", word).put("message", reply.message));
+                }
+            }
+        } finally {
+            shardLock.readLock().unlock();
+            deferredWrites.remove();
+        }
+        try {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            e.printStackTrace();
+            return Reply.error(null, "Changes could not be saved.").toJson();
+        }
+        return new JSONObject().put("status", "success").put("imported", imported).put("failed", failed)
+                .put("errors", errors).toString();
+    }
+
+    private static JSONObject chunkEntries(JSONObject request) throws IOException {
+        String compress = request.optString("compress");
+        if (compress.isEmpty()) return request.optJSONObject("entries");
+        if (!compress.equalsIgnoreCase(ChunkCodec.GZIP)) throw new IOException("unsupported compression " + compress);
+        return new JSONObject(ChunkCodec.decompress(request.optString("data"), MAX_CHUNK_BYTES));
+    }
+
+    private static Reply importEntry(String word, List<String> meanings, boolean replace) {
+        String owner = ownerElsewhere(word);
+        if (owner != null) return Reply.error(word.toLowerCase(), "Word belongs to node " + owner + ".");
+        if (!replace) return addWord(word, meanings);
+        // Without meanings a put would remove the word
+        if (meanings == null) return Reply.error(word.toLowerCase(), "Meanings cannot be empty.");
+        return putWord(word, meanings);
+    }
+
+    // {"request":"export","after":"word","limit":1000,"compress":"gzip"} answers with the next
+    // words after `after` in alphabetical order and their meanings, plus "next" to ask for the
+    // chunk after that (absent on the last one). It walks the live sorted index, so writers are
+    // never held up and no more than one chunk is ever built; a word changed meanwhile is
+    // exported as it is when its chunk is read.
+    private static String exportChunk(JSONObject request) {
+        int limit = Math.max(1, Math.min(request.optInt("limit", DEFAULT_CHUNK_ENTRIES), MAX_CHUNK_ENTRIES));
+        String after = request.optString("after", null);
+        NavigableSet<String> words = prefixIndex.words();
+        Iterator<String> cursor = (after == null ? words : words.tailSet(after.toLowerCase(), false)).iterator();
+        StringBuilder entries = new StringBuilder("{");
+        int count = 0;
+        String last = null;
+        while (count < limit && cursor.hasNext()) {
+            String word = cursor.next();
+            String[] meanings = dictionary.get(word);
+            // Gone since the index listed it, or a copy a handoff is still moving away
+            if (meanings == null || ownerElsewhere(word) != null) continue;
+            if (count++ > 0) entries.append(',');
+            entries.append(JSONObject.quote(word)).append(':').append(new JSONArray(Arrays.asList(meanings)));
+            last = word;
+        }
+        entries.append('}');
+        JSONObject response = new JSONObject().put("status", "success").put("count", count);
+        if (last != null && cursor.hasNext()) response.put("next", last);
+        if (ChunkCodec.GZIP.equalsIgnoreCase(request.optString("compress"))) {
+            return response.put("compress", ChunkCodec.GZIP).put("data", ChunkCodec.compress(entries.toString())).toString();
+        }
+        String head = response.toString();
+        return head.substring(0, head.length() - 1) + ",\"entries\":" + entries + "}";
+    }
+
+    private static String dispatch(JSONObject request, boolean peer) {
+        String action = request.optString("request");
+        String word = request.optString("word");
+
+        if (replica != null && isMutation(action)) {
+            return new JSONObject().put("word", word.toLowerCase()).put("status", "error").put("code", "read_only")
+                    .put("message", "Read-only replica, send changes to the primary.")
+                    .put("primary", replica.primaryAddress()).toString();
+        }
+        if (action.equalsIgnoreCase("put")) {
+            if (!peer) return Reply.error(word.toLowerCase(), "Put is only accepted from other nodes.").toJson();
+            return dispatchPut(request, word);
+        }
+        if (!isMutation(action)) return dispatchOwned(request, action, word);
+        shardLock.readLock().lock();
+        try {
+            return dispatchOwned(request, action, word);
+        } finally {
+            shardLock.readLock().unlock();
+        }
+    }
+
+    // A put takes the shard lock like any mutation. Held exclusively, it means this node is
+    // finishing a handoff of its own, and the sender may be a node doing the same, holding its
+    // lock until this put is applied. A word the new ring keeps here is not touched by the end
+    // of this node's handoff, so its put goes ahead without the lock and the two cannot deadlock.
+    private static String dispatchPut(JSONObject request, String word) {
+        boolean locked = shardLock.readLock().tryLock();
+        if (!locked) {
+            ShardHandoff current = handoff;
+            if (current == null || current.moves(word.toLowerCase())) {
+                shardLock.readLock().lock();
+                locked = true;
+            }
+        }
+        try {
+            return dispatchOwned(request, "put", word);
+        } finally {
+            if (locked) shardLock.readLock().unlock();
+        }
+    }
+
+    private static String dispatchOwned(JSONObject request, String action, String word) {
+        // Declare variables outside the switch
+        String newMeaning = null;
+        String oldMeaning = null;
+
+        String owner = isMutation(action) || action.equalsIgnoreCase("query") ? ownerElsewhere(word) : null;
+        if (owner != null) {
+            return new JSONObject().put("word", word.toLowerCase()).put("status", "error").put("code", "moved")
+                    .put("message", "Word belongs to another node.").put("owner", owner).toString();
+        }
+        switch (action.toLowerCase()) {
+            case "query":
+                return queryJson(word);
+            case "add":
+                return addWord(word, toList(request.optJSONArray("meanings"))).toJson();
+            case "remove":
+                return removeWord(word).toJson();
+            case "addmeaning":
+                newMeaning = request.optString("meaning");
+                return addMeaning(word, newMeaning).toJson();
+            case "updatemeaning":
+                oldMeaning = request.optString("old");
+                newMeaning = request.optString("new");
+                return updateMeaning(word, oldMeaning, newMeaning).toJson();
+            case "put":
+                return putWord(word, toList(request.optJSONArray("meanings"))).toJson();
+            case "prefix":
+                return prefixWords(word, request.optInt("limit", DEFAULT_PREFIX_LIMIT)).toJson();
+            case "search":
+                return searchMeanings(request.optString("terms"), request.optString("mode", "all"),
+                        request.optInt("limit", DEFAULT_SEARCH_LIMIT)).toJson();
+            case "disconnect":
+                return DISCONNECTED;
+            default:
+                return "{\"status\":\"error\",\"message\":\"Invalid request type.\"}";
+        }
+    }
+
+    private static boolean isMutation(String action) {
+        switch (action.toLowerCase()) {
+            case "add":
+            case "remove":
+            case "addmeaning":
+            case "updatemeaning":
+            case "put":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static List<String> toList(JSONArray array) {
+        if (array == null) return null;
+        List<String> values = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            values.add(array.optString(i));
+        }
+        return values;
+    }
+
+    // Binary protocol counterpart of handleRequest: one request frame in, one encoded reply frame out
+    static byte[] handleFrame(BinaryProtocol.Frame frame, InvalidationHub.Subscriber subscriber) {
+        long start = System.nanoTime();
+        byte[] reply;
+        if (frame.code == BinaryProtocol.SUBSCRIBE) {
+            reply = encodeReply(frame.id, subscribe(subscriber));
+        } else if (frame.code == BinaryProtocol.STATS) {
+            reply = BinaryProtocol.encode(BinaryProtocol.OK, frame.id, "", "", stats().toString());
+        } else if (frame.code == BinaryProtocol.QUERY && frame.field(0) != null && ownerElsewhere(frame.field(0)) == null) {
+            reply = queryFrame(frame.id, frame.field(0));
+        } else {
+            reply = encodeReply(frame.id, dispatch(frame));
+        }
+        metrics.request(Metrics.Action.of(frame.code), start, reply[0] == BinaryProtocol.ERROR);
+        return reply;
+    }
+
+    static byte[] encodeReply(int id, Reply reply) {
+        return BinaryProtocol.encode(reply.success ? BinaryProtocol.OK : BinaryProtocol.ERROR, id, reply.toFields());
+    }
+
+    private static Reply dispatch(BinaryProtocol.Frame frame) {
+        String word = frame.field(0);
+        if (word == null && frame.code != BinaryProtocol.DISCONNECT) {
+            return Reply.error(null, "Malformed request.");
+        }
+        if (replica != null && frame.code >= BinaryProtocol.ADD && frame.code <= BinaryProtocol.UPDATE_MEANING) {
+            return Reply.error(word.toLowerCase(), "Read-only replica, send changes to the primary at " + replica.primaryAddress() + ".");
+        }
+        boolean mutation = frame.code >= BinaryProtocol.ADD && frame.code <= BinaryProtocol.UPDATE_MEANING;
+        if (!mutation) return dispatchOwned(frame, word);
+        shardLock.readLock().lock();
+        try {
+            return dispatchOwned(frame, word);
+        } finally {
+            shardLock.readLock().unlock();
+        }
+    }
+
+    private static Reply dispatchOwned(BinaryProtocol.Frame frame, String word) {
+        String owner = frame.code >= BinaryProtocol.QUERY && frame.code <= BinaryProtocol.UPDATE_MEANING ? ownerElsewhere(word) : null;
+        if (owner != null) return Reply.error(word.toLowerCase(), "Word belongs to node " + owner + ".");
+        switch (frame.code) {
+            case BinaryProtocol.QUERY:
+                return queryWord(word);
+            case BinaryProtocol.ADD:
+                return addWord(word, Arrays.asList(frame.fields).subList(1, frame.fields.length));
+            case BinaryProtocol.REMOVE:
+                return removeWord(word);
+            case BinaryProtocol.ADD_MEANING:
+                return frame.fields.length < 2 ? Reply.error(word, "Malformed request.") : addMeaning(word, frame.fields[1]);
+            case BinaryProtocol.UPDATE_MEANING:
+                return frame.fields.length < 3 ? Reply.error(word, "Malformed request.") : updateMeaning(word, frame.fields[1], frame.fields[2]);
+            case BinaryProtocol.PREFIX:
+                try {
+                    return prefixWords(word, frame.fields.length > 1 ? Integer.parseInt(frame.fields[1]) : DEFAULT_PREFIX_LIMIT);
+                } catch (NumberFormatException e) {
+                    return Reply.error(word, "Malformed request.");
+                }
+            case BinaryProtocol.SEARCH:
+                try {
+                    return searchMeanings(word, frame.fields.length > 1 ? frame.fields[1] : "all",
+                            frame.fields.length > 2 ? Integer.parseInt(frame.fields[2]) : DEFAULT_SEARCH_LIMIT);
+                } catch (NumberFormatException e) {
+                    return Reply.error(word, "Malformed request.");
+                }
+            case BinaryProtocol.DISCONNECT:
+                return Reply.success(null, "Disconnected.");
+            default:
+                return Reply.error(word, "Invalid request type.");
+        }
+    }
+
+    // Handle the add meaning logic
+    private static Reply addMeaning(String word, String newMeaning) {
         word = word.toLowerCase();
-        if (!dictionary.containsKey(word)) {
-            return new JSONObject().put("word", word).put("status", "error").put("message", "Word not found.").toString();
+        // Check if the word already existed or not, and add the meaning in the same step
+        switch (dictionary.addMeaning(word, newMeaning)) {
+            case NOT_FOUND:
+                return Reply.error(word, "Word not found.");
+            case MEANING_EXISTS:
+                return Reply.error(word, "Meaning already exists.");
+            default:
+                if (!logMutation(word)) return persistFailure(word);
+                return Reply.success(word, "Meaning added.");
         }
+    }
 
-        // Check if the meaning of the word already existed or not
-        Set<String> meanings = dictionary.get(word);
-        if (!meanings.contains(oldMeaning)) {
-            return new JSONObject().put("word", word).put("status", "error").put("message", "Old meaning not found.").toString();
+    // Handle the logic for updating meaning
+    private static Reply updateMeaning(String word, String oldMeaning, String newMeaning) {
+        word = word.toLowerCase();
+        // If the old meaning exists it is replaced with the new meaning, atomically
+        switch (dictionary.updateMeaning(word, oldMeaning, newMeaning)) {
+            case NOT_FOUND:
+                return Reply.error(word, "Word not found.");
+            case OLD_MEANING_NOT_FOUND:
+                return Reply.error(word, "Old meaning not found.");
+            default:
+                if (!logMutation(word)) return persistFailure(word);
+                return Reply.success(word, "Meaning updated.");
         }
-        // If existed, then remove it and replace it with new meaning
-        meanings.remove(oldMeaning);
-        meanings.add(newMeaning);
-        saveDictionary();
-        return new JSONObject().put("word", word).put("status", "success").put("message", "Meaning updated.").toString();
+    }
+
+    // Cached response line for a plain query line, or null when it needs the general path. A hit
+    // allocates nothing but the lower-cased word.
+    static byte[] cachedQueryLine(QueryFastPath fastPath, byte[] line, int from, int to) {
+        long start = System.nanoTime();
+        if (responseCache == null || !fastPath.parse(line, from, to)) return null;
+        String word = fastPath.word();
+        // A word handed off may still be cached here; the general path answers "moved"
+        if (ownerElsewhere(word) != null) return null;
+        ResponseCache.Entry entry = responseCache.get(word);
+        if (entry == null) return null;
+        metrics.request(Metrics.Action.QUERY, start, false);
+        return entry.jsonLine;
+    }
+
+    // Query hits come straight from the response cache when the word is in it
+    private static String queryJson(String word) {
+        word = word.toLowerCase();
+        ResponseCache.Entry entry = responseCache == null ? null : responseCache.get(word);
+        return entry != null ? entry.json : queryAndCache(word).toJson();
+    }
+
+    private static byte[] queryFrame(int id, String word) {
+        word = word.toLowerCase();
+        ResponseCache.Entry entry = responseCache == null ? null : responseCache.get(word);
+        return entry != null ? BinaryProtocol.withId(entry.frame, id) : encodeReply(id, queryAndCache(word));
+    }
+
+    // Only hits are offered to the cache, misses depend on the other words through the suggestions
+    private static Reply queryAndCache(String word) {
+        if (responseCache == null) return queryWord(word);
+        long version = responseCache.version(word);
+        Reply reply = queryWord(word);
+        if (reply.meanings != null) responseCache.offer(word, version, reply);
+        return reply;
     }
 
     // Find if the word is already in dictionary or not
-    private static String queryWord(String word) {
+    static Reply queryWord(String word) {
         word = word.toLowerCase();
-        if (dictionary.containsKey(word)) {
-            JSONArray meanings = new JSONArray(dictionary.get(word));
-            return new JSONObject().put("word", word).put("status", "success").put("meanings", meanings).toString();
+        String[] meanings = dictionary.get(word);
+        if (meanings != null) {
+            return Reply.meanings(word, Arrays.asList(meanings));
+        } else if (suggestDistance > 0 && !word.isEmpty()) {
+            return Reply.notFound(word, fuzzyMatcher.suggest(word, suggestDistance, MAX_SUGGESTIONS, suggestBudget));
         } else {
-            return new JSONObject().put("word", word).put("status", "error").put("message", "Word not found.").toString();
+            return Reply.error(word, "Word not found.");
+        }
+    }
+
+    // Autocomplete: the first words in alphabetical order that start with the given text
+    private static Reply prefixWords(String prefix, int limit) {
+        prefix = prefix.toLowerCase();
+        limit = Math.max(1, Math.min(limit, MAX_PREFIX_LIMIT));
+        return Reply.words(prefix, prefixIndex.complete(prefix, limit));
+    }
+
+    // Full-text lookup over the meanings; "all" needs every term, "any" at least one
+    private static Reply searchMeanings(String terms, String mode, int limit) {
+        if (terms == null || terms.trim().isEmpty()) {
+            return Reply.error(null, "Search terms cannot be empty.");
         }
+        boolean matchAll = !mode.equalsIgnoreCase("any");
+        limit = Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT));
+        return Reply.words(null, meaningIndex.search(terms, matchAll, limit));
     }
 
-    private static String addWord(String word, JSONArray meaningsArray) {
+    static Reply addWord(String word, List<String> meaningsList) {
         word = word.toLowerCase();
-        if (word == null || word.isEmpty() || !word.matches("[a-zA-Z]+")) {
-            return new JSONObject().put("status", "error").put("message", "Invalid word. Only alphabetic characters are allowed.").toString();
+        if (!QueryFastPath.letters(word)) {
+            return Reply.error(null, "Invalid word. Only alphabetic characters are allowed.");
         }
 
-        if (meaningsArray == null || meaningsArray.length() == 0) {
-            return new JSONObject().put("word", word).put("status", "error").put("message", "Meanings cannot be empty.").toString();
+        String[] meanings = cleanMeanings(meaningsList);
+        if (meanings == null) {
+            return Reply.error(word, "Meanings cannot be empty.");
         }
 
-        Set<String> meaningsSet = new HashSet<>();
-        for (int i = 0; i < meaningsArray.length(); i++) {
-            String meaning = meaningsArray.optString(i);
+        if (dictionary.add(word, meanings) == DictionaryStore.Outcome.DUPLICATE) {
+            return Reply.error(word, "Duplicate word.");
+        }
+        if (!logMutation(word)) return persistFailure(word);
+        return Reply.success(word, "Word added.");
+    }
+
+    // Trimmed, without blanks or repeats; null when nothing is left
+    private static String[] cleanMeanings(List<String> meaningsList) {
+        if (meaningsList == null) return null;
+        Set<String> meaningsSet = new LinkedHashSet<>();
+        for (String meaning : meaningsList) {
             if (meaning != null && !meaning.trim().isEmpty()) {
                 meaningsSet.add(meaning.trim());
             }
         }
+        return meaningsSet.isEmpty() ? null : meaningsSet.toArray(new String[0]);
+    }
 
-        if (meaningsSet.isEmpty()) {
-            return new JSONObject().put("word", word).put("status", "error").put("message", "Meanings cannot be empty.").toString();
+    static Reply removeWord(String word) {
+        word = word.toLowerCase();
+        if (dictionary.remove(word) == DictionaryStore.Outcome.DONE) {
+            if (!logMutation(word)) return persistFailure(word);
+            return Reply.success(word, "Word removed.");
+        } else {
+            return Reply.error(word, "Word not found.");
         }
+    }
 
-        if (dictionary.containsKey(word)) {
-            return new JSONObject().put("word", word).put("status", "error").put("message", "Duplicate word.").toString();
+    // Set the word's full state as given, or remove it without meanings; how a handoff from
+    // another node arrives (see ShardHandoff). Meanings given are checked as for "add".
+    private static Reply putWord(String word, List<String> meanings) {
+        word = word.toLowerCase();
+        if (!QueryFastPath.letters(word)) {
+            return Reply.error(null, "Invalid word. Only alphabetic characters are allowed.");
+        }
+        String[] cleaned = null;
+        if (meanings != null) {
+            cleaned = cleanMeanings(meanings);
+            if (cleaned == null) return Reply.error(word, "Meanings cannot be empty.");
         }
+        if (dictionary.replace(word, cleaned) && !logMutation(word)) {
+            return persistFailure(word);
+        }
+        return Reply.success(word, "Word stored.");
+    }
 
-        dictionary.put(word, meaningsSet);
-        saveDictionary();
-        return new JSONObject().put("word", word).put("status", "success").put("message", "Word added.").toString();
+    // The node that owns the word when it is not this one, otherwise null
+    private static String ownerElsewhere(String word) {
+        HashRing ring = shardRing;
+        if (ring == null) return null;
+        String owner = ring.owner(word);
+        return owner.equals(shardName) ? null : owner;
     }
 
-    private static String removeWord(String word) {
-        word = word.toLowerCase();
-        if (dictionary.remove(word) != null) {
-            saveDictionary();
-            return new JSONObject().put("word", word).put("status", "success").put("message", "Word removed.").toString();
-        } else {
-            return new JSONObject().put("word", word).put("status", "error").put("message", "Word not found.").toString();
-        }
-    }
-
-    // Loading the dictionary everytime when the client starts the connection
-    private static void loadDictionary() {
-        File file = new File(dictionaryFile);
-        if (!file.exists()) return;
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) sb.append(line);
-            JSONObject json = new JSONObject(sb.toString());
-            for (String key : json.keySet()) {
-                JSONArray meaningsArray = json.getJSONArray(key);
-                Set<String> meanings = ConcurrentHashMap.newKeySet();
-                for (int i = 0; i < meaningsArray.length(); i++) {
-                    meanings.add(meaningsArray.getString(i));
+    // {"request":"ring","node":"this host:port","nodes":"host:port,...","vnodes":128} from the
+    // router. Words the new ring gives to other nodes are streamed to them while clients keep
+    // using them here; writes pause only while the last changes go out and the ring is switched.
+    // Then the copies here are dropped. If the handoff fails the old ring stays and nothing is.
+    private static String reshard(JSONObject request) {
+        String self = request.optString("node");
+        HashRing ring;
+        try {
+            ring = HashRing.parse(request.optString("nodes"), request.optInt("vnodes", HashRing.DEFAULT_VIRTUAL_NODES));
+        } catch (IllegalArgumentException e) {
+            return Reply.error(null, "The ring needs at least one node.").toJson();
+        }
+        if (!ring.contains(self)) return Reply.error(null, "The ring does not include " + self + ".").toJson();
+        if (replica != null) return Reply.error(null, "Read-only replica, send the ring to the primary.").toJson();
+
+        reshardLock.lock();
+        long start = System.nanoTime();
+        ShardHandoff current = new ShardHandoff(ring, self, peerKey);
+        try {
+            // Every change from here on is queued, so the copy below can run alongside clients
+            handoff = current;
+            List<String> moving = new ArrayList<>();
+            dictionary.forEach((word, meanings) -> {
+                if (current.moves(word)) moving.add(word);
+            });
+            for (String word : moving) current.send(word, dictionary.get(word));
+            current.flush();
+            // Catch up with what changed meanwhile, until little is left
+            for (int round = 0; round < HANDOFF_CATCH_UP_ROUNDS && current.sendChanged(dictionary) > HANDOFF_PAUSE_WORDS; round++) {
+                current.flush();
+            }
+            // Hold writes for the rest, so the new owners have every change before this server
+            // starts sending clients to them
+            shardLock.writeLock().lock();
+            try {
+                current.sendChanged(dictionary);
+                current.flush();
+                shardRing = ring;
+                shardName = self;
+            } finally {
+                shardLock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Reply.error(null, "Handoff failed: " + e.getMessage()).toJson();
+        } finally {
+            handoff = null;
+            current.close();
+            reshardLock.unlock();
+        }
+
+        int dropped = dropMoved(current);
+        System.out.printf("Took ring %s as %s, handed off %d words in %d ms.%n", ring, self, dropped,
+                (System.nanoTime() - start) / 1_000_000);
+        return new JSONObject().put("status", "success").put("message", "Handed off " + dropped + " words.")
+                .put("moved", dropped).toString();
+    }
+
+    // Remove the words another node owns now, waiting for the log once for all of them
+    private static int dropMoved(ShardHandoff done) {
+        List<String> moved = new ArrayList<>();
+        dictionary.forEach((word, meanings) -> {
+            if (done.moves(word)) moved.add(word);
+        });
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        deferredWrites.set(writes);
+        try {
+            for (String word : moved) {
+                if (dictionary.replace(word, null)) logMutation(word);
+            }
+        } finally {
+            deferredWrites.remove();
+        }
+        try {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            e.printStackTrace();
+        }
+        return moved.size();
+    }
+
+    // Append the word's new state to the log and wait until the fsync policy is satisfied;
+    // the snapshot is only rewritten by checkpoint(). Subscribed clients hear about the change.
+    private static boolean logMutation(String word) {
+        if (responseCache != null) responseCache.invalidate(word);
+        CompletableFuture<Void> written = log.append(word, dictionary);
+        invalidations.publish(word);
+        List<CompletableFuture<Void>> deferred = deferredWrites.get();
+        if (deferred != null) {
+            deferred.add(written);
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            written.join();
+            metrics.logWrite(System.nanoTime() - start);
+            return true;
+        } catch (CompletionException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static Reply persistFailure(String word) {
+        return Reply.error(word, "Change could not be saved.");
+    }
+
+    private static WriteAheadLog.FsyncPolicy fsyncPolicy() {
+        String value = options.getOrDefault("fsync", "os");
+        try {
+            return WriteAheadLog.FsyncPolicy.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown fsync policy " + value + ", using os");
+            return WriteAheadLog.FsyncPolicy.OS;
+        }
+    }
+
+    // Loading the dictionary everytime when the client starts the connection. Any file that
+    // cannot be read fails the start: nothing is checkpointed over it.
+    private static void loadDictionary() throws IOException {
+        long loadStart = System.nanoTime();
+        boolean mapped = loadSnapshot();
+        long intervalMillis = Long.parseLong(options.getOrDefault("fsync-interval-ms", "10"));
+        log = new WriteAheadLog(dictionaryFile, fsyncPolicy(), intervalMillis);
+        int replayed = log.replay(dictionary);
+        loadReplicationState();
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " logged changes.");
+        }
+        // Start from a clean log so the next crash has less to replay, and write the first
+        // segments right away when switching to them
+        if (replayed > 0 || (segmentStorage && !mapped)) checkpoint();
+        long start = System.nanoTime();
+        long[] words = {0};
+        dictionary.forEach((word, meanings) -> {
+            prefixIndex.add(word);
+            words[0]++;
+        });
+        meaningIndex.build(dictionary);
+        System.out.printf("Indexed in %d ms.%n", (System.nanoTime() - start) / 1_000_000);
+        metrics.loaded(words[0], (System.nanoTime() - loadStart) / 1_000_000);
+    }
+
+    // Runs inside the store's atomic step, so each word's index updates happen in the same
+    // order as its changes
+    private static void reindex(String word, String[] before, String[] after) {
+        ShardHandoff running = handoff;
+        if (running != null) running.changed(word);
+        if (before == null) {
+            prefixIndex.add(word);
+            metrics.wordsChanged(1);
+        }
+        if (after == null) {
+            prefixIndex.remove(word);
+            metrics.wordsChanged(-1);
+            meaningIndex.removeWord(word, Arrays.asList(before));
+            return;
+        }
+        List<String> current = Arrays.asList(after);
+        List<String> previous = before == null ? Collections.emptyList() : Arrays.asList(before);
+        List<String> removed = new ArrayList<>(previous);
+        removed.removeAll(current);
+        List<String> added = new ArrayList<>(current);
+        added.removeAll(previous);
+        meaningIndex.update(word, removed, added, current);
+    }
+
+    // Segments, when there are any, are the latest, then a binary snapshot: checkpoints in the
+    // other modes delete them. Returns true if segments were mapped.
+    private static boolean loadSnapshot() throws IOException {
+        Path binary = binarySnapshotPath();
+        Path json = Paths.get(dictionaryFile);
+        long start = System.nanoTime();
+        try {
+            int words;
+            if (Files.exists(manifestPath())) {
+                List<Segment> segments = new ArrayList<>();
+                words = 0;
+                for (String name : Files.readAllLines(manifestPath())) {
+                    if (name.isEmpty()) continue;
+                    Segment segment = Segment.open(manifestPath().resolveSibling(name));
+                    segments.add(segment);
+                    words += segment.count();
                 }
-                dictionary.put(key, meanings);
+                dictionary.attach(segments);
+                System.out.printf("Mapped %d words in %d segments in %d ms.%n", words, segments.size(),
+                        (System.nanoTime() - start) / 1_000_000);
+                return true;
             }
-        } catch (Exception e) {
+            // Changes go to an overlay from the start; the first checkpoint turns it into segments
+            if (segmentStorage) dictionary.attach(Collections.emptyList());
+            if (Files.exists(binary)) {
+                words = Snapshot.readBinary(binary, dictionary);
+            } else if (Files.exists(json)) {
+                words = Snapshot.readJson(json, dictionary);
+            } else {
+                return false;
+            }
+            System.out.printf("Loaded %d words in %d ms.%n", words, (System.nanoTime() - start) / 1_000_000);
+        } catch (JSONException e) {
+            throw new IOException("Cannot read " + json, e);
+        }
+        return false;
+    }
+
+    private static Path binarySnapshotPath() {
+        return Paths.get(dictionaryFile + ".snap");
+    }
+
+    // Names of the current segment files, one per line, next to the dictionary file
+    private static Path manifestPath() {
+        return Paths.get(dictionaryFile + ".segments").toAbsolutePath();
+    }
+
+    // Fresh names for the files of the next compaction: <dictionaryFile>.<generation>.seg.<n>
+    private static Iterator<Path> segmentPaths() {
+        long generation = System.currentTimeMillis();
+        return new Iterator<Path>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Path next() {
+                return manifestPath().resolveSibling(Paths.get(dictionaryFile).getFileName() + "." + generation + ".seg." + next++);
+            }
+        };
+    }
+
+    // Merge the overlay into new segments, point the manifest at them, then delete the old ones
+    private static boolean saveSegments() throws IOException {
+        // A replica being seeded reads a view, which compaction would pull the words from under;
+        // the log keeps everything until the next checkpoint
+        if (dictionary.hasOpenViews()) {
+            System.err.println("A replica is being seeded, compacting at the next checkpoint.");
+            return false;
+        }
+        List<Segment> old = dictionary.segments();
+        List<Segment> current = dictionary.compact(segmentPaths());
+        StringBuilder manifest = new StringBuilder();
+        for (Segment segment : current) manifest.append(segment.path.getFileName()).append('\n');
+        Snapshot.writeAtomically(manifestPath(), manifest.toString().getBytes(StandardCharsets.UTF_8));
+        // Mappings of the old files stay valid until their last reader lets go of them
+        for (Segment segment : old) Files.deleteIfExists(segment.path);
+        return true;
+    }
+
+    // Outside segment mode the manifest would shadow the snapshot just written, so it goes
+    private static void dropSegments() throws IOException {
+        if (!Files.exists(manifestPath())) return;
+        List<String> names = Files.readAllLines(manifestPath());
+        Files.delete(manifestPath());
+        for (String name : names) {
+            if (!name.isEmpty()) Files.deleteIfExists(manifestPath().resolveSibling(name));
+        }
+    }
+
+    private static void startReplication(int port) {
+        String replicaOf = options.get("replica-of");
+        int replicationPort = intOption("replication-port", 0);
+        try {
+            if (replicaOf != null) {
+                replica = new ReplicationReplica(replicaOf, options.get("primary-address"));
+                replica.start(log.lsn());
+            } else if (replicationPort > 0) {
+                // A new history, so replicas of whatever this dictionary was before start over
+                if (replicationId.isEmpty()) {
+                    replicationId = Long.toHexString(new Random().nextLong() & Long.MAX_VALUE);
+                    saveReplicationState(log.lsn());
+                }
+                primary = new ReplicationPrimary(replicationId, log.lsn(),
+                        intOption("replication-backlog", DEFAULT_REPLICATION_BACKLOG), port, dictionary);
+                log.shipTo(primary);
+                primary.listen(replicationPort);
+            }
+        } catch (IOException | RuntimeException e) {
             e.printStackTrace();
         }
     }
 
-    // Transfer the word into json style when saving to dictionary
-    private static synchronized void saveDictionary() {
-        JSONObject json = new JSONObject();
-        for (Map.Entry<String, Set<String>> entry : dictionary.entrySet()) {
-            json.put(entry.getKey(), new JSONArray(entry.getValue()));
+    static String replicationId() {
+        return replicationId;
+    }
+
+    private static Path replicationStatePath() {
+        return Paths.get(dictionaryFile + ".replication");
+    }
+
+    // {"id":..., "lsn":...}: the history and an LSN the snapshot on disk covers; the log may go further
+    private static void loadReplicationState() {
+        Path path = replicationStatePath();
+        if (!Files.exists(path)) return;
+        try {
+            JSONObject state = new JSONObject(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+            replicationId = state.optString("id");
+            log.advanceTo(state.optLong("lsn"));
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
         }
-        try (PrintWriter writer = new PrintWriter(new FileWriter(dictionaryFile))) {
-            writer.println(json.toString(2));
+    }
+
+    private static void saveReplicationState(long lsn) throws IOException {
+        Snapshot.writeAtomically(replicationStatePath(),
+                new JSONObject().put("id", replicationId).put("lsn", lsn).toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // One word of a snapshot from the primary. Not logged: until adoptSnapshot() checkpoints, a
+    // restart still has the old state and the old LSN, and asks for a snapshot again.
+    static void replaceFromPrimary(String word, String[] meanings) {
+        if (dictionary.replace(word, meanings)) changedByPrimary(word);
+    }
+
+    // The snapshot is complete: drop the words it did not have, take over its history and LSN
+    static void adoptSnapshot(String id, long lsn, Set<String> words) {
+        List<String> gone = new ArrayList<>();
+        dictionary.forEach((word, meanings) -> {
+            if (!words.contains(word)) gone.add(word);
+        });
+        for (String word : gone) replaceFromPrimary(word, null);
+        replicationId = id;
+        log.resetTo(lsn);
+        checkpoint();
+    }
+
+    // One streamed change, logged under the primary's LSN so a restart resumes after it; done
+    // once the record is as durable as --fsync makes it
+    static CompletableFuture<Void> applyFromPrimary(long lsn, String word, String[] meanings) {
+        if (dictionary.replace(word, meanings)) changedByPrimary(word);
+        return log.append(word, dictionary, lsn);
+    }
+
+    private static void changedByPrimary(String word) {
+        if (responseCache != null) responseCache.invalidate(word);
+        invalidations.publish(word);
+    }
+
+    // Rotate the log, write a snapshot that covers everything in it, then drop the rotated log.
+    // Records appended while the snapshot is written land in the new log and are replayed on top.
+    private static void checkpoint() {
+        checkpointLock.lock();
+        try {
+            long covered = log.rotate();
+            if (saveDictionary()) {
+                if (primary != null || replica != null) saveReplicationState(covered);
+                log.discardRotated();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Also keeps the scheduled compactor alive, which a thrown exception would cancel
+            e.printStackTrace();
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    // Every snapshot write is timed for the metrics, which also tell the writes made meanwhile apart
+    static boolean saveDictionary() {
+        long start = System.nanoTime();
+        metrics.saveStarted();
+        boolean saved = false;
+        try {
+            saved = writeSnapshot();
+        } finally {
+            metrics.saved(System.nanoTime() - start, saved);
+        }
+        return saved;
+    }
+
+    // Transfer the word into json style when saving to dictionary, or into the binary snapshot
+    private static boolean writeSnapshot() {
+        if (segmentStorage) {
+            try {
+                return saveSegments();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+        Path target = binarySnapshots ? binarySnapshotPath() : Paths.get(dictionaryFile);
+        // Write next to the real file and swap it in, so a crash never leaves a half-written snapshot
+        Path tmp = Paths.get(target + ".tmp");
+        try {
+            // Taken in O(1); writers go on while it is written out
+            try (DictionaryStore.View view = dictionary.snapshot()) {
+                if (binarySnapshots) {
+                    Snapshot.writeBinary(view, tmp);
+                } else {
+                    Snapshot.writeJson(view, tmp);
+                }
+                metrics.savedCopies(view.copied());
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // The rename must be durable before anything it replaces goes, the rotated log included
+            Snapshot.syncDirectory(target);
+            // The JSON file is the newest state again, so an older binary snapshot must not shadow it
+            if (!binarySnapshots) Files.deleteIfExists(binarySnapshotPath());
+            dropSegments();
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
+            return false;
         }
     }
 }
@@ -0,0 +1,36 @@
+package DictionaryServer;
+
+// Server-wide figures over JMX, registered as DictionaryServer:type=Server; see Metrics
+public interface ServerMXBean {
+    long getUptimeSeconds();
+
+    long getWords();
+
+    long getOpenConnections();
+
+    long getAcceptedConnections();
+
+    long getRejectedConnections();
+
+    long getBusyRequests();
+
+    long getLoadMillis();
+
+    long getSaves();
+
+    long getSaveFailures();
+
+    double getMaxSaveMillis();
+
+    double getP99LogWriteMicros();
+
+    long getLastSaveCopiedWords();
+
+    // Requests changing a word while a snapshot was being written, and at all other times
+    double getP99WriteMicrosDuringSave();
+
+    double getP99WriteMicrosOtherwise();
+
+    // Everything the "stats" action returns, as its JSON text
+    String getStats();
+}
@@ -0,0 +1,193 @@
+package DictionaryServer;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import org.json.*;
+import DictionaryProtocol.HashRing;
+
+// Streams the words this server gives up under a new HashRing to the nodes that own them now,
+// while clients keep using them here. Each new owner gets one connection that introduces itself
+// with "peer" and then carries "batch" requests of "put" ops, the full state of each word, so
+// sending a word again is harmless.
+// Words changed after the handoff began are queued by the store's listener and sent again at
+// the end, which is what lets the server switch rings without stopping writes for the copy.
+final class ShardHandoff implements Closeable {
+    private static final int WORDS_PER_BATCH = 500;
+    private static final long ACK_TIMEOUT_SECONDS = 60;
+
+    private final HashRing ring;
+    private final String self;
+    // --peer-key of this deployment, null when there is none
+    private final String peerKey;
+    // Moving words changed since the handoff began; a word may be in here more than once
+    private final Queue<String> changed = new ConcurrentLinkedQueue<>();
+    private final Map<String, Stream> streams = new HashMap<>();
+
+    ShardHandoff(HashRing ring, String self, String peerKey) {
+        this.ring = ring;
+        this.self = self;
+        this.peerKey = peerKey;
+    }
+
+    boolean moves(String word) {
+        return !ring.owner(word).equals(self);
+    }
+
+    // Called by the store's listener inside the word's atomic step
+    void changed(String word) {
+        if (moves(word)) changed.add(word);
+    }
+
+    // Queue the current state of one word for its new owner; null meanings remove it there
+    void send(String word, String[] meanings) throws IOException {
+        String owner = ring.owner(word);
+        Stream stream = streams.get(owner);
+        if (stream == null) {
+            stream = new Stream(owner, peerKey);
+            streams.put(owner, stream);
+        }
+        stream.put(word, meanings);
+    }
+
+    // Send again every word changed since the last call, as it is now; returns how many
+    int sendChanged(DictionaryStore dictionary) throws IOException {
+        Set<String> words = new HashSet<>();
+        String word;
+        while ((word = changed.poll()) != null) words.add(word);
+        for (String w : words) send(w, dictionary.get(w));
+        return words.size();
+    }
+
+    // Returns once every owner confirmed everything sent so far
+    void flush() throws IOException {
+        for (Stream stream : streams.values()) stream.flush();
+    }
+
+    @Override
+    public void close() {
+        for (Stream stream : streams.values()) stream.close();
+    }
+
+    // One connection to a new owner. Batches are pipelined; a reader thread matches the answers
+    // to them in order.
+    private static final class Stream {
+        private final String node;
+        private final Socket socket;
+        private final Writer output;
+        // Answers the reader has still to match, and those flush() has still to check
+        private final Queue<CompletableFuture<Void>> unanswered = new ConcurrentLinkedQueue<>();
+        private final List<CompletableFuture<Void>> unchecked = new ArrayList<>();
+        private JSONArray ops = new JSONArray();
+
+        Stream(String node, String peerKey) throws IOException {
+            this.node = node;
+            int colon = node.lastIndexOf(':');
+            if (colon < 0) throw new IOException("Node " + node + " is not host:port");
+            this.socket = new Socket(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1).trim()));
+            socket.setTcpNoDelay(true);
+            this.output = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Thread reader = new Thread(() -> readLoop(input), "shard-handoff-" + node);
+            reader.setDaemon(true);
+            reader.start();
+            // Checked with the first flush like any batch
+            JSONObject hello = new JSONObject().put("request", "peer");
+            if (peerKey != null) hello.put("key", peerKey);
+            expectAnswer();
+            output.write(hello.toString());
+            output.write('\n');
+        }
+
+        void put(String word, String[] meanings) throws IOException {
+            JSONObject op = new JSONObject().put("request", "put").put("word", word);
+            if (meanings != null) op.put("meanings", new JSONArray(Arrays.asList(meanings)));
+            ops.put(op);
+            if (ops.length() >= WORDS_PER_BATCH) writeBatch();
+        }
+
+        private void writeBatch() throws IOException {
+            if (ops.isEmpty()) return;
+            expectAnswer();
+            output.write(new JSONObject().put("request", "batch").put("ops", ops).toString());
+            output.write('\n');
+            ops = new JSONArray();
+        }
+
+        private void expectAnswer() {
+            CompletableFuture<Void> answer = new CompletableFuture<>();
+            unanswered.add(answer);
+            unchecked.add(answer);
+        }
+
+        void flush() throws IOException {
+            writeBatch();
+            output.flush();
+            for (CompletableFuture<Void> answer : unchecked) {
+                try {
+                    answer.get(ACK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    throw new IOException(node + ": " + e.getCause().getMessage());
+                } catch (InterruptedException | TimeoutException e) {
+                    throw new IOException(node + " did not confirm the handoff in time");
+                }
+            }
+            unchecked.clear();
+        }
+
+        // A batch counts only if every put in it succeeded, the hello if it was accepted
+        private void readLoop(BufferedReader input) {
+            Exception failure = new IOException("Connection closed");
+            try {
+                String line;
+                while ((line = input.readLine()) != null) {
+                    CompletableFuture<Void> answer = unanswered.poll();
+                    if (answer == null) continue;
+                    JSONObject response = new JSONObject(line);
+                    String error = null;
+                    JSONArray results = response.optJSONArray("results");
+                    if (results == null) {
+                        if (!"success".equals(response.optString("status"))) {
+                            error = response.optString("message", "Unexpected answer");
+                        }
+                    } else {
+                        for (int i = 0; i < results.length() && error == null; i++) {
+                            JSONObject result = results.getJSONObject(i);
+                            if (!"success".equals(result.optString("status"))) error = result.optString("message");
+                        }
+                    }
+                    if (error == null) {
+                        answer.complete(null);
+                    } else {
+                        answer.completeExceptionally(new IOException(error));
+                    }
+                }
+            } catch (IOException | JSONException e) {
+                failure = e;
+            }
+            CompletableFuture<Void> answer;
+            while ((answer = unanswered.poll()) != null) answer.completeExceptionally(failure);
+            closeSocket();
+        }
+
+        // The owner hangs up after answering, which ends the reader
+        void close() {
+            try {
+                output.write("{\"request\":\"disconnect\"}\n");
+                output.flush();
+            } catch (IOException e) {
+                closeSocket();
+            }
+        }
+
+        private void closeSocket() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
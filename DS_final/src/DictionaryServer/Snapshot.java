@@ -0,0 +1,260 @@
+package DictionaryServer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import org.json.*;
+
+// Reading and writing whole-dictionary snapshots, one word at a time so neither direction ever
+// holds the full document in memory. Writing goes through a DictionaryStore.View, so the file
+// is the dictionary at one point in time even though clients keep changing it meanwhile.
+//
+// JSON is the original dictionary.json layout and stays the default. The binary layout is for
+// large dictionaries: words are packed into blocks of about BLOCK_BYTES, each with a CRC32, and
+// a block index at the end of the file lets the loader hand blocks to different cores.
+//
+//   file:    "DSNP" u32 version | block... | index | u64 indexOffset u32 blockCount "DSNP"
+//   block:   u32 entries, then per entry: u32 length + UTF-8 word, u16 count, count x (u32 length + UTF-8)
+//   index:   per block: u64 offset, u32 length, u32 crc32
+final class Snapshot {
+    private static final int MAGIC = 0x44534E50;   // "DSNP"
+    private static final int VERSION = 1;
+    private static final int BLOCK_BYTES = 1024 * 1024;
+    private static final int TRAILER_BYTES = 16;
+    private static final int INDEX_ENTRY_BYTES = 16;
+
+    private Snapshot() {
+    }
+
+    // Stream {"word": ["meaning", ...], ...} into the store; returns the number of words read
+    static int readJson(Path path, DictionaryStore dictionary) throws IOException {
+        int words = 0;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            JSONTokener tokener = new JSONTokener(reader);
+            if (tokener.nextClean() != '{') throw tokener.syntaxError("A dictionary must start with '{'");
+            if (tokener.nextClean() == '}') return 0;
+            tokener.back();
+            while (true) {
+                char quote = tokener.nextClean();
+                if (quote != '"' && quote != '\'') throw tokener.syntaxError("Expected a word");
+                String word = tokener.nextString(quote);
+                if (tokener.nextClean() != ':') throw tokener.syntaxError("Expected ':' after a word");
+                Object value = tokener.nextValue();
+                if (!(value instanceof JSONArray)) throw tokener.syntaxError("Meanings of " + word + " must be an array");
+                JSONArray meaningsArray = (JSONArray) value;
+                String[] meanings = new String[meaningsArray.length()];
+                for (int i = 0; i < meanings.length; i++) {
+                    meanings[i] = meaningsArray.getString(i);
+                }
+                dictionary.restore(word, meanings);
+                words++;
+                char next = tokener.nextClean();
+                if (next == '}') return words;
+                if (next != ',') throw tokener.syntaxError("Expected ',' or '}'");
+            }
+        }
+    }
+
+    static void writeJson(DictionaryStore.View dictionary, Path path) throws IOException {
+        try (FileOutputStream file = new FileOutputStream(path.toFile());
+             Writer writer = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8))) {
+            writer.write('{');
+            boolean[] first = {true};
+            IOException[] failure = {null};
+            dictionary.forEach((word, meanings) -> {
+                if (failure[0] != null) return;
+                try {
+                    writer.write(first[0] ? "\n  " : ",\n  ");
+                    first[0] = false;
+                    writer.write(JSONObject.quote(word));
+                    writer.write(": [");
+                    for (int i = 0; i < meanings.length; i++) {
+                        if (i > 0) writer.write(", ");
+                        writer.write(JSONObject.quote(meanings[i]));
+                    }
+                    writer.write(']');
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+            writer.write("\n}\n");
+            // On disk before it replaces the old snapshot and the log it covers is deleted
+            writer.flush();
+            file.getFD().sync();
+        }
+    }
+
+    // Make a rename into, or a file created in, the directory holding `file` survive a crash
+    static void syncDirectory(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows cannot open a directory, there the file system keeps renames in order itself
+        }
+    }
+
+    // A small file (manifest, replication state) replaced whole: written, synced, renamed over
+    // the old one, and the rename synced
+    static void writeAtomically(Path target, byte[] content) throws IOException {
+        Path tmp = Paths.get(target + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(target);
+    }
+
+    // Decode every block in parallel straight into the store; returns the number of words read
+    static int readBinary(Path path, DictionaryStore dictionary) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 8 + TRAILER_BYTES) throw new IOException("Snapshot " + path + " is truncated");
+            ByteBuffer header = read(channel, 0, 8);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) throw new IOException("Not a dictionary snapshot: " + path);
+            ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            int blockCount = trailer.getInt();
+            if (trailer.getInt() != MAGIC || indexOffset + (long) blockCount * INDEX_ENTRY_BYTES != size - TRAILER_BYTES) {
+                throw new IOException("Snapshot " + path + " has a damaged block index");
+            }
+            ByteBuffer index = read(channel, indexOffset, blockCount * INDEX_ENTRY_BYTES);
+            long[] offsets = new long[blockCount];
+            int[] lengths = new int[blockCount];
+            int[] checksums = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+                checksums[i] = index.getInt();
+            }
+            try {
+                return IntStream.range(0, blockCount).parallel().map(i -> {
+                    try {
+                        ByteBuffer block = read(channel, offsets[i], lengths[i]);
+                        CRC32 crc = new CRC32();
+                        crc.update(block.duplicate());
+                        if ((int) crc.getValue() != checksums[i]) throw new IOException("Snapshot block " + i + " is corrupt");
+                        return readBlock(block, dictionary);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }).sum();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    static void writeBinary(DictionaryStore.View dictionary, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            channel.write(header);
+            BlockWriter blocks = new BlockWriter(channel);
+            IOException[] failure = {null};
+            dictionary.forEach((word, meanings) -> {
+                if (failure[0] != null) return;
+                try {
+                    blocks.add(word, meanings);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+            blocks.finish();
+            channel.force(false);
+        }
+    }
+
+    private static int readBlock(ByteBuffer block, DictionaryStore dictionary) {
+        int entries = block.getInt();
+        for (int e = 0; e < entries; e++) {
+            String word = readString(block);
+            String[] meanings = new String[block.getShort() & 0xFFFF];
+            for (int i = 0; i < meanings.length; i++) {
+                meanings[i] = readString(block);
+            }
+            dictionary.restore(word, meanings);
+        }
+        return entries;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    // Positional reads, so blocks can be read from several threads at once
+    private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) throw new EOFException("Snapshot is truncated");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Packs entries into blocks, writes each block once it is full and the index at the end
+    private static final class BlockWriter {
+        private final FileChannel channel;
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_BYTES + 64 * 1024);
+        private final DataOutputStream out = new DataOutputStream(block);
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private final DataOutputStream indexOut = new DataOutputStream(index);
+        private int entries;
+        private int blockCount;
+
+        BlockWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void add(String word, String[] meanings) throws IOException {
+            if (meanings.length > 0xFFFF) throw new IOException(word + " has too many meanings for a binary snapshot");
+            writeString(word);
+            out.writeShort(meanings.length);
+            for (String meaning : meanings) writeString(meaning);
+            entries++;
+            if (block.size() >= BLOCK_BYTES) writeBlock();
+        }
+
+        void finish() throws IOException {
+            if (entries > 0) writeBlock();
+            long indexOffset = channel.position();
+            ByteBuffer tail = ByteBuffer.allocate(index.size() + TRAILER_BYTES).put(index.toByteArray())
+                    .putLong(indexOffset).putInt(blockCount).putInt(MAGIC);
+            tail.flip();
+            while (tail.hasRemaining()) channel.write(tail);
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeBlock() throws IOException {
+            byte[] body = block.toByteArray();
+            ByteBuffer buffer = ByteBuffer.allocate(4 + body.length).putInt(entries).put(body);
+            buffer.flip();
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            indexOut.writeLong(channel.position());
+            indexOut.writeInt(buffer.remaining());
+            indexOut.writeInt((int) crc.getValue());
+            while (buffer.hasRemaining()) channel.write(buffer);
+            blockCount++;
+            block.reset();
+            entries = 0;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package DictionaryServer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import org.json.*;
+
+// Append-only log of dictionary mutations, replayed on top of the last snapshot at startup.
+// Every record is one line "<crc32 in hex> <json>\n", and the json always carries the full state
+// of the word after the mutation, so replaying a record more than once is harmless.
+// Appends from all client threads are queued and written by one flusher thread in batches
+// (group commit); each append returns a future that completes once its batch is as durable
+// as the configured policy asks for. Locks are ReentrantLocks rather than monitors so virtual
+// threads blocked on the log park instead of pinning their carrier thread.
+//
+// Records are numbered by a log sequence number (LSN) in the order they are queued. On a
+// primary the log hands each record to the Shipper in that same order, which is the stream
+// replicas apply; a replica logs what it applies under the primary's numbers.
+class WriteAheadLog implements Closeable {
+    enum FsyncPolicy {
+        ALWAYS,     // write and fsync every batch before acknowledging it
+        INTERVAL,   // fsync at most once per interval, acknowledge after that fsync
+        OS          // acknowledge once written, let the OS decide when it reaches the disk
+    }
+
+    // Told about every record as it is queued, under the queue lock; must not block
+    interface Shipper {
+        void ship(long lsn, String word, String[] meanings);
+    }
+
+    private final Path logPath;
+    private final Path rotatedPath;
+    private final FsyncPolicy policy;
+    private final long intervalMillis;
+    private FileChannel channel;
+
+    // Records waiting for the flusher, and the future shared by everyone in that batch
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition hasPending = queueLock.newCondition();
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private CompletableFuture<Void> pendingDone = new CompletableFuture<>();
+    // Held while batches are written, so rotation never interleaves with a flush
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private final Thread flusher;
+    private volatile boolean closed;
+    // Number of the last record queued or replayed; guarded by queueLock
+    private long lsn;
+    private Shipper shipper;
+
+    WriteAheadLog(String dictionaryFile, FsyncPolicy policy, long intervalMillis) throws IOException {
+        this.logPath = Paths.get(dictionaryFile + ".log");
+        this.rotatedPath = Paths.get(dictionaryFile + ".log.1");
+        this.policy = policy;
+        this.intervalMillis = intervalMillis;
+        this.channel = open(logPath);
+        if (policy != FsyncPolicy.OS) Snapshot.syncDirectory(logPath);
+        this.flusher = new Thread(this::flushLoop, "dictionary-log-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        ch.position(ch.size());
+        return ch;
+    }
+
+    // Queue the current state of one word; a missing entry in the map is logged as a removal.
+    // The state is read under the queue lock so records for the same word stay in mutation order.
+    CompletableFuture<Void> append(String word, DictionaryStore dictionary) {
+        return append(word, dictionary, 0);
+    }
+
+    // With a non-zero lsn the record keeps that number instead of taking the next one
+    CompletableFuture<Void> append(String word, DictionaryStore dictionary, long lsn) {
+        queueLock.lock();
+        try {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IOException("Log is closed."));
+            }
+            this.lsn = lsn != 0 ? lsn : this.lsn + 1;
+            String[] meanings = dictionary.get(word);
+            if (shipper != null) shipper.ship(this.lsn, word, meanings);
+            JSONObject record = new JSONObject().put("lsn", this.lsn).put("word", word);
+            if (meanings == null) {
+                record.put("op", "remove");
+            } else {
+                record.put("op", "put").put("meanings", new JSONArray(Arrays.asList(meanings)));
+            }
+            pending.add(ByteBuffer.wrap(encode(record.toString())));
+            if (pending.size() == 1 && policy != FsyncPolicy.INTERVAL) hasPending.signal();
+            return pendingDone;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                queueLock.lock();
+                try {
+                    if (policy == FsyncPolicy.INTERVAL) {
+                        hasPending.await(intervalMillis, TimeUnit.MILLISECONDS);
+                    } else {
+                        while (pending.isEmpty() && !closed) hasPending.await();
+                    }
+                } finally {
+                    queueLock.unlock();
+                }
+                flush();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Write everything queued so far as one batch and complete its future
+    private void flush() {
+        ioLock.lock();
+        try {
+            List<ByteBuffer> batch;
+            CompletableFuture<Void> done;
+            queueLock.lock();
+            try {
+                if (pending.isEmpty()) return;
+                batch = pending;
+                done = pendingDone;
+                pending = new ArrayList<>();
+                pendingDone = new CompletableFuture<>();
+            } finally {
+                queueLock.unlock();
+            }
+            try {
+                ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+                while (buffers[buffers.length - 1].hasRemaining()) {
+                    channel.write(buffers);
+                }
+                if (policy != FsyncPolicy.OS) channel.force(false);
+                done.complete(null);
+            } catch (IOException e) {
+                done.completeExceptionally(e);
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    long lsn() {
+        queueLock.lock();
+        try {
+            return lsn;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    // Continue numbering after `lsn` if that is further than the log got on its own
+    void advanceTo(long lsn) {
+        queueLock.lock();
+        try {
+            this.lsn = Math.max(this.lsn, lsn);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    // Continue numbering right after `lsn`, as a replica does once it took a primary's snapshot
+    void resetTo(long lsn) {
+        queueLock.lock();
+        try {
+            this.lsn = lsn;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    void shipTo(Shipper shipper) {
+        queueLock.lock();
+        try {
+            this.shipper = shipper;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    long size() throws IOException {
+        ioLock.lock();
+        try {
+            return channel.size();
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    // Move the active log aside so a snapshot can absorb it, and start a fresh one. Returns an LSN
+    // every record up to which is in the rotated log (later ones may be in either).
+    long rotate() throws IOException {
+        long covered = lsn();
+        ioLock.lock();
+        try {
+            // Whatever is queued belongs to the log being rotated
+            flush();
+            channel.close();
+            if (Files.exists(rotatedPath)) {
+                // A previous checkpoint never finished; keep its records ahead of ours. They must be
+                // on disk there before the only other copy goes.
+                try (FileChannel older = FileChannel.open(rotatedPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(logPath));
+                    while (records.hasRemaining()) older.write(records);
+                    if (policy != FsyncPolicy.OS) older.force(true);
+                }
+                Files.delete(logPath);
+            } else {
+                Files.move(logPath, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+            }
+            channel = open(logPath);
+            // The rename and the new log, whose synced records are no use if its name is lost
+            if (policy != FsyncPolicy.OS) Snapshot.syncDirectory(logPath);
+            return covered;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    // Called once the snapshot covering the rotated log has been written
+    void discardRotated() throws IOException {
+        Files.deleteIfExists(rotatedPath);
+    }
+
+    // Apply the rotated log (if a checkpoint was interrupted) and then the active log
+    int replay(DictionaryStore dictionary) throws IOException {
+        ioLock.lock();
+        try {
+            int applied = replayFile(rotatedPath, dictionary);
+            applied += replayFile(logPath, dictionary);
+            channel.position(channel.size());
+            return applied;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    private int replayFile(Path path, DictionaryStore dictionary) throws IOException {
+        if (!Files.exists(path)) return 0;
+        int applied = 0;
+        long goodOffset = 0;
+        long offset = 0;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                JSONObject record = decode(line.toString(StandardCharsets.UTF_8));
+                line.reset();
+                if (record == null) break;
+                apply(record, dictionary);
+                lsn = Math.max(lsn, record.optLong("lsn"));
+                applied++;
+                goodOffset = offset;
+            }
+        }
+        // Anything after the last complete record is a torn write from a crash, drop it
+        if (goodOffset < Files.size(path)) {
+            System.err.println("Truncating torn tail of " + path + " at byte " + goodOffset);
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ch.truncate(goodOffset);
+            }
+        }
+        return applied;
+    }
+
+    private static void apply(JSONObject record, DictionaryStore dictionary) {
+        String word = record.getString("word");
+        if ("remove".equals(record.optString("op"))) {
+            dictionary.restore(word, null);
+            return;
+        }
+        JSONArray meaningsArray = record.getJSONArray("meanings");
+        String[] meanings = new String[meaningsArray.length()];
+        for (int i = 0; i < meanings.length; i++) {
+            meanings[i] = meaningsArray.getString(i);
+        }
+        dictionary.restore(word, meanings);
+    }
+
+    static byte[] encode(String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        byte[] prefix = String.format("%08x ", crc.getValue()).getBytes(StandardCharsets.US_ASCII);
+        byte[] record = new byte[prefix.length + body.length + 1];
+        System.arraycopy(prefix, 0, record, 0, prefix.length);
+        System.arraycopy(body, 0, record, prefix.length, body.length);
+        record[record.length - 1] = '\n';
+        return record;
+    }
+
+    // Returns null for anything that does not check out, which ends the replay
+    static JSONObject decode(String line) {
+        if (line.length() < 10 || line.charAt(8) != ' ') return null;
+        String body = line.substring(9);
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        try {
+            if (Long.parseLong(line.substring(0, 8), 16) != crc.getValue()) return null;
+            return new JSONObject(body);
+        } catch (NumberFormatException | JSONException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        queueLock.lock();
+        try {
+            closed = true;
+            hasPending.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+        ioLock.lock();
+        try {
+            flush();
+            channel.close();
+        } finally {
+            ioLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package DictionaryClient;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.json.*;
+import org.junit.jupiter.api.Test;
+
+class WordCacheTest {
+    @Test
+    void hitsAreCopiesNoCallerCanChange() {
+        WordCache cache = new WordCache(10);
+        JSONObject response = new JSONObject().put("status", "success").put("word", "apple")
+                .put("meanings", new JSONArray().put("a fruit"));
+        cache.put("query:apple", response, cache.generation());
+        response.getJSONArray("meanings").put("changed after storing");
+
+        JSONObject first = cache.get("query:apple");
+        first.getJSONArray("meanings").put("changed by a caller");
+        first.put("status", "error");
+
+        JSONObject second = cache.get("query:apple");
+        assertNotSame(first, second);
+        assertEquals("success", second.getString("status"));
+        assertEquals(1, second.getJSONArray("meanings").length());
+    }
+
+    @Test
+    void responseRacingAnEventIsNotStored() {
+        WordCache cache = new WordCache(10);
+        long seen = cache.generation();
+        cache.invalidate("apple");
+        cache.put("query:apple", new JSONObject().put("status", "success"), seen);
+        assertNull(cache.get("query:apple"));
+    }
+}
@@ -0,0 +1,32 @@
+package DictionaryProtocol;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class ChunkCodecTest {
+    @Test
+    void decompressGivesBackWhatWasCompressed() throws IOException {
+        String json = "{\"café\":[\"a \\\"small\\\" restaurant\",\"Ångström\"],\"apple\":[\"a fruit\"]}";
+        String data = ChunkCodec.compress(json);
+        assertFalse(data.contains("\n"), "a chunk must stay on one line");
+        assertEquals(json, ChunkCodec.decompress(data, json.length() * 2));
+        assertEquals("", ChunkCodec.decompress(ChunkCodec.compress(""), 0));
+    }
+
+    @Test
+    void expansionIsBounded() {
+        String json = "{\"word\":[\"" + "a".repeat(100000) + "\"]}";
+        String data = ChunkCodec.compress(json);
+        assertTrue(data.length() < 1000, data.length() + " bytes");
+        IOException e = assertThrows(IOException.class, () -> ChunkCodec.decompress(data, 50000));
+        assertEquals("Chunk expands past 50000 bytes", e.getMessage());
+    }
+
+    @Test
+    void dataThatIsNotAChunkIsRejected() {
+        assertThrows(IOException.class, () -> ChunkCodec.decompress("not base64!", 1000));
+        assertThrows(IOException.class, () -> ChunkCodec.decompress("aGVsbG8=", 1000));
+    }
+}
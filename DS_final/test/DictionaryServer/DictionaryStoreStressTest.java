@@ -0,0 +1,164 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+// Many writers on a handful of words, with readers checking every array they get back. A lost
+// update shows up as a missing meaning at the end, a torn read as an array no single change made.
+@Timeout(120)
+class DictionaryStoreStressTest {
+    private static final int WRITERS = 8;
+    private static final int READERS = 2;
+    private static final int WORDS = 4;
+    private static final int OPS = 5000;
+
+    // Each change reaches the listener with the state the previous one left
+    private final Map<String, String[]> lastSeen = new ConcurrentHashMap<>();
+    private final AtomicInteger brokenChains = new AtomicInteger();
+    private final DictionaryStore store = new DictionaryStore((word, before, after) -> {
+        if (lastSeen.get(word) != before) brokenChains.incrementAndGet();
+        if (after == null) {
+            lastSeen.remove(word);
+        } else {
+            lastSeen.put(word, after);
+        }
+    });
+
+    @Test
+    void concurrentAddMeaningLosesNothing() throws Exception {
+        for (int w = 0; w < WORDS; w++) store.add("word" + w, new String[]{"first"});
+        List<String> torn = Collections.synchronizedList(new ArrayList<>());
+        runAll(writer -> {
+            for (int i = 0; i < OPS; i++) {
+                String word = "word" + (i % WORDS);
+                assertEquals(DictionaryStore.Outcome.DONE, store.addMeaning(word, writer + "-" + i));
+                // A meaning another writer holds already is refused, never added twice
+                store.addMeaning(word, "first");
+            }
+        }, reader -> {
+            // Only additions happen, so every read must be a duplicate-free array that never shrinks
+            int[] lengths = new int[WORDS];
+            for (int i = 0; i < OPS * 4; i++) {
+                int w = i % WORDS;
+                String[] meanings = store.get("word" + w);
+                if (meanings == null || meanings.length < lengths[w] || !distinct(meanings) || !"first".equals(meanings[0])) {
+                    torn.add("word" + w + " " + Arrays.toString(meanings));
+                }
+                if (meanings != null) lengths[w] = meanings.length;
+            }
+        });
+
+        assertEquals(Collections.emptyList(), torn);
+        for (int w = 0; w < WORDS; w++) {
+            Set<String> meanings = new HashSet<>(Arrays.asList(store.get("word" + w)));
+            assertEquals(1 + WRITERS * OPS / WORDS, meanings.size(), "word" + w);
+            for (int writer = 0; writer < WRITERS; writer++) {
+                for (int i = w; i < OPS; i += WORDS) assertTrue(meanings.contains(writer + "-" + i));
+            }
+        }
+        assertEquals(0, brokenChains.get());
+    }
+
+    @Test
+    void concurrentUpdateMeaningKeepsEveryWordWhole() throws Exception {
+        // Each writer renames its own meaning over and over; the others must never be disturbed
+        for (int w = 0; w < WORDS; w++) {
+            String[] meanings = new String[WRITERS];
+            for (int writer = 0; writer < WRITERS; writer++) meanings[writer] = writer + "-0";
+            store.add("word" + w, meanings);
+        }
+        List<String> torn = Collections.synchronizedList(new ArrayList<>());
+        runAll(writer -> {
+            for (int i = 0; i < OPS; i++) {
+                String word = "word" + (i % WORDS);
+                int round = i / WORDS;
+                assertEquals(DictionaryStore.Outcome.DONE,
+                        store.updateMeaning(word, writer + "-" + round, writer + "-" + (round + 1)));
+            }
+        }, reader -> {
+            for (int i = 0; i < OPS * 4; i++) {
+                String[] meanings = store.get("word" + (i % WORDS));
+                if (meanings == null || meanings.length != WRITERS || !distinct(meanings)) {
+                    torn.add(Arrays.toString(meanings));
+                }
+            }
+        });
+
+        assertEquals(Collections.emptyList(), torn);
+        int rounds = OPS / WORDS;
+        for (int w = 0; w < WORDS; w++) {
+            Set<String> expected = new HashSet<>();
+            for (int writer = 0; writer < WRITERS; writer++) expected.add(writer + "-" + rounds);
+            assertEquals(expected, new HashSet<>(Arrays.asList(store.get("word" + w))));
+        }
+        assertEquals(0, brokenChains.get());
+    }
+
+    @Test
+    void racingAddAndRemoveAgreeOnOneWinner() throws Exception {
+        // Every round each writer tries to add and then remove the same word: adds and removes that
+        // succeed must alternate, which they only do if each check-and-change is one step
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        runAll(writer -> {
+            for (int i = 0; i < OPS; i++) {
+                String word = "word" + (i % WORDS);
+                if (store.add(word, new String[]{"by " + writer}) == DictionaryStore.Outcome.DONE) added.incrementAndGet();
+                if (store.remove(word) == DictionaryStore.Outcome.DONE) removed.incrementAndGet();
+            }
+        }, reader -> {
+        });
+
+        int left = 0;
+        for (int w = 0; w < WORDS; w++) {
+            if (store.get("word" + w) != null) left++;
+        }
+        assertEquals(added.get(), removed.get() + left);
+        assertEquals(0, brokenChains.get());
+    }
+
+    private interface Task {
+        void run(int index) throws Exception;
+    }
+
+    // Starts every writer and reader at once and fails with the first error any of them threw
+    private static void runAll(Task writer, Task reader) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> running = new ArrayList<>();
+        try {
+            for (int i = 0; i < WRITERS + READERS; i++) {
+                int index = i;
+                running.add(pool.submit(() -> {
+                    start.await();
+                    if (index < WRITERS) {
+                        writer.run(index);
+                    } else {
+                        reader.run(index - WRITERS);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : running) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                    throw (Exception) e.getCause();
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static boolean distinct(String[] meanings) {
+        return new HashSet<>(Arrays.asList(meanings)).size() == meanings.length;
+    }
+}
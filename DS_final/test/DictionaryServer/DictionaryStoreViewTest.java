@@ -0,0 +1,97 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// A view shows the store as it was when taken, whatever changes after that, with every word once
+class DictionaryStoreViewTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void viewIgnoresLaterChanges() {
+        DictionaryStore store = new DictionaryStore((word, before, after) -> { });
+        store.add("apple", new String[]{"a fruit"});
+        store.add("pear", new String[]{"a fruit"});
+        try (DictionaryStore.View view = store.snapshot()) {
+            store.addMeaning("apple", "a tree");
+            store.remove("pear");
+            store.add("plum", new String[]{"a fruit"});
+            assertEquals(Map.of("apple", List.of("a fruit"), "pear", List.of("a fruit")), contents(view));
+            assertEquals(3, view.copied());
+        }
+        assertNull(store.get("pear"));
+        assertEquals(List.of("a fruit", "a tree"), Arrays.asList(store.get("apple")));
+    }
+
+    // A checkpoint and a replica being seeded each hold one
+    @Test
+    void overlappingViewsEachKeepTheirOwnPointInTime() {
+        DictionaryStore store = new DictionaryStore((word, before, after) -> { });
+        store.add("apple", new String[]{"a fruit"});
+        store.add("pear", new String[]{"a fruit"});
+        DictionaryStore.View first = store.snapshot();
+        store.remove("apple");
+        store.add("plum", new String[]{"a fruit"});
+        try (DictionaryStore.View second = store.snapshot()) {
+            store.remove("pear");
+            store.add("apple", new String[]{"a company"});
+            assertEquals(Map.of("apple", List.of("a fruit"), "pear", List.of("a fruit")), contents(first));
+            first.close();
+            assertEquals(Map.of("pear", List.of("a fruit"), "plum", List.of("a fruit")), contents(second));
+            assertTrue(store.hasOpenViews());
+        }
+        assertFalse(store.hasOpenViews());
+        assertNull(store.get("pear"));
+        assertEquals(List.of("a company"), Arrays.asList(store.get("apple")));
+        // Nothing either of them kept carries over to the next one
+        try (DictionaryStore.View next = store.snapshot()) {
+            assertEquals(Map.of("apple", List.of("a company"), "plum", List.of("a fruit")), contents(next));
+            assertEquals(0, next.copied());
+        }
+    }
+
+    @Test
+    void layeredViewReadsThroughTheOverlay() throws Exception {
+        DictionaryStore store = new DictionaryStore((word, before, after) -> { });
+        store.attach(Collections.emptyList());
+        for (String word : List.of("apple", "cherry", "pear")) store.add(word, new String[]{"a fruit"});
+        int[] next = {0};
+        store.compact(new Iterator<Path>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Path next() {
+                return dir.resolve("seg." + next[0]++);
+            }
+        });
+        // Overlay entries over segment words, and one of its own
+        store.addMeaning("apple", "a tree");
+        store.remove("cherry");
+        store.add("plum", new String[]{"a fruit"});
+
+        Map<String, List<String>> expected = Map.of("apple", List.of("a fruit", "a tree"), "pear", List.of("a fruit"),
+                "plum", List.of("a fruit"));
+        try (DictionaryStore.View view = store.snapshot()) {
+            store.remove("apple");
+            store.add("cherry", new String[]{"a stone fruit"});
+            store.updateMeaning("pear", "a fruit", "a pome");
+            store.add("quince", new String[]{"a fruit"});
+            assertEquals(expected, contents(view));
+        }
+    }
+
+    // Fails on a word seen twice
+    private static Map<String, List<String>> contents(DictionaryStore.View view) {
+        Map<String, List<String>> words = new HashMap<>();
+        view.forEach((word, meanings) -> assertNull(words.put(word, Arrays.asList(meanings)), word));
+        return words;
+    }
+}
@@ -0,0 +1,109 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// The threaded and nio front ends must treat the same input the same way
+@Timeout(120)
+class FrontEndTest {
+    private static final String QUERY = "{\"request\":\"query\",\"word\":\"apple\"}";
+
+    @TempDir
+    Path dir;
+
+    private ServerProcesses servers;
+
+    @AfterEach
+    void tearDown() {
+        if (servers != null) servers.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"threads", "nio"})
+    void blankLinesAreSkipped(String mode) throws Exception {
+        Process server = start("--mode=" + mode);
+        try (Client client = new Client(server)) {
+            client.write("\n \t\r\n" + QUERY + "\n\n\r\n" + QUERY + "\n   \n");
+            for (int i = 0; i < 2; i++) assertEquals("success", client.read().optString("status"));
+            client.write(QUERY + "\n");
+            assertEquals("success", client.read().optString("status"));
+        }
+        servers.stop(server);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"threads", "nio"})
+    void connectionsOverTheLimitAreTurnedAway(String mode) throws Exception {
+        Process server = start("--mode=" + mode, "--max-connections=1");
+        // The probe that waited for the server to listen holds the permit for a moment
+        try (Client first = admitted(server)) {
+            try (Client second = new Client(server)) {
+                assertEquals("overloaded", second.read().optString("code"));
+                assertNull(second.input.readLine());
+            }
+        }
+        // The permit comes back once the first client is gone
+        admitted(server).close();
+        servers.stop(server);
+    }
+
+    private Client admitted(Process server) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (true) {
+            Client client = new Client(server);
+            client.write(QUERY + "\n");
+            JSONObject response = client.read();
+            if ("success".equals(response.optString("status"))) return client;
+            client.close();
+            assertEquals("overloaded", response.optString("code"));
+            assertTrue(System.nanoTime() < deadline, "the connection permit was never released");
+            Thread.sleep(100);
+        }
+    }
+
+    private Process start(String... flags) throws Exception {
+        servers = new ServerProcesses(dir);
+        Path file = dir.resolve("dictionary.json");
+        Files.write(file, "{\"apple\": [\"a fruit\"]}".getBytes(StandardCharsets.UTF_8));
+        return servers.start(file, flags);
+    }
+
+    // Raw lines, so nothing between the test and the server drops or adds any
+    private final class Client implements Closeable {
+        final Socket socket;
+        final BufferedReader input;
+
+        Client(Process server) throws IOException {
+            socket = new Socket("localhost", servers.port(server));
+            socket.setSoTimeout(30000);
+            input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        void write(String text) throws IOException {
+            socket.getOutputStream().write(text.getBytes(StandardCharsets.UTF_8));
+            socket.getOutputStream().flush();
+        }
+
+        JSONObject read() throws IOException {
+            String line = input.readLine();
+            assertNotNull(line, "connection closed");
+            return new JSONObject(line);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import org.junit.jupiter.api.Test;
+
+// Suggestions against a brute-force Levenshtein scan over a dense synthetic dictionary
+class FuzzyMatcherTest {
+    private static final int WORDS = 20000;
+    private static final int QUERIES = 200;
+
+    private final List<String> words = new ArrayList<>();
+    private final FuzzyMatcher matcher;
+    private final Random random = new Random(11);
+
+    FuzzyMatcherTest() {
+        Set<String> unique = new TreeSet<>();
+        while (unique.size() < WORDS) {
+            StringBuilder word = new StringBuilder();
+            for (int s = 1 + random.nextInt(3); s > 0; s--) {
+                word.append("bdklmst".charAt(random.nextInt(7))).append("aeiou".charAt(random.nextInt(5)));
+            }
+            unique.add(word.toString());
+        }
+        words.addAll(unique);
+        matcher = new FuzzyMatcher(new ConcurrentSkipListSet<>(unique), new HashSet<>(unique)::contains);
+    }
+
+    @Test
+    void unboundedSuggestionsMatchBruteForce() {
+        for (int distance = 1; distance <= 2; distance++) {
+            for (int i = 0; i < QUERIES; i++) {
+                String query = query(distance);
+                assertEquals(bruteForce(query, distance, 5), matcher.suggest(query, distance, 5, Integer.MAX_VALUE), query);
+            }
+        }
+    }
+
+    @Test
+    void everyWordOneEditAwayIsFoundWhateverTheBudget() {
+        for (int i = 0; i < QUERIES; i++) {
+            String query = query(1);
+            List<String> near = bruteForce(query, 1, 5);
+            List<String> found = matcher.suggest(query, 2, 5, 1);
+            assertEquals(near, found.subList(0, Math.min(near.size(), found.size())), query);
+        }
+    }
+
+    @Test
+    void overlongTargetsGetNothing() {
+        char[] letters = new char[FuzzyMatcher.MAX_TARGET_LENGTH + 1];
+        Arrays.fill(letters, 'a');
+        assertEquals(Collections.emptyList(), matcher.suggest(new String(letters), 2, 5, Integer.MAX_VALUE));
+    }
+
+    // A word of the dictionary with random edits, not itself a word
+    private String query(int edits) {
+        while (true) {
+            StringBuilder query = new StringBuilder(words.get(random.nextInt(words.size())));
+            for (int e = 0; e < edits; e++) {
+                int at = random.nextInt(query.length());
+                char letter = (char) ('a' + random.nextInt(26));
+                switch (random.nextInt(3)) {
+                    case 0:
+                        query.setCharAt(at, letter);
+                        break;
+                    case 1:
+                        query.insert(at, letter);
+                        break;
+                    default:
+                        if (query.length() > 1) query.deleteCharAt(at);
+                }
+            }
+            if (Collections.binarySearch(words, query.toString()) < 0) return query.toString();
+        }
+    }
+
+    private List<String> bruteForce(String query, int maxDistance, int limit) {
+        Map<String, Integer> found = new HashMap<>();
+        for (String word : words) {
+            int d = levenshtein(query, word);
+            if (d <= maxDistance) found.put(word, d);
+        }
+        List<String> sorted = new ArrayList<>(found.keySet());
+        sorted.sort(Comparator.comparing((String word) -> found.get(word)).thenComparing(word -> word));
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] above = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) above[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            row[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                row[j] = Math.min(Math.min(row[j - 1] + 1, above[j] + 1), above[j - 1] + cost);
+            }
+            int[] swap = above;
+            above = row;
+            row = swap;
+        }
+        return above[b.length()];
+    }
+}
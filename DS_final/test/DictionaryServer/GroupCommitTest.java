@@ -0,0 +1,108 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+// An append's future completes once its record is in the log file, whatever the policy, and
+// appends queued together share one batch
+@Timeout(60)
+class GroupCommitTest {
+    private static final int THREADS = 8;
+    private static final int APPENDS = 100;
+
+    @TempDir
+    Path dir;
+
+    private final DictionaryStore store = new DictionaryStore((word, before, after) -> { });
+
+    private String file() {
+        return dir.resolve("dictionary.json").toString();
+    }
+
+    private CompletableFuture<Void> append(WriteAheadLog log, String word) {
+        store.replace(word, new String[]{"meaning of " + word});
+        return log.append(word, store);
+    }
+
+    @ParameterizedTest
+    @EnumSource(WriteAheadLog.FsyncPolicy.class)
+    void futureCompletesOnceTheRecordIsWritten(WriteAheadLog.FsyncPolicy policy) throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(file(), policy, 5)) {
+            for (int i = 0; i < 20; i++) {
+                String word = "word" + (char) ('a' + i);
+                append(log, word).get();
+                List<String> lines = Files.readAllLines(Paths.get(file() + ".log"), StandardCharsets.UTF_8);
+                assertEquals(i + 1, lines.size());
+                assertEquals(word, WriteAheadLog.decode(lines.get(i)).getString("word"));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(WriteAheadLog.FsyncPolicy.class)
+    void concurrentAppendsAllComplete(WriteAheadLog.FsyncPolicy policy) throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(THREADS);
+        try (WriteAheadLog log = new WriteAheadLog(file(), policy, 5)) {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                String prefix = "thread" + (char) ('a' + t);
+                done.add(writers.submit(() -> {
+                    for (int i = 0; i < APPENDS; i++) append(log, prefix + letters(i)).get();
+                    return null;
+                }));
+            }
+            for (Future<?> future : done) future.get();
+            assertEquals(THREADS * APPENDS, log.lsn());
+        } finally {
+            writers.shutdownNow();
+        }
+        DictionaryStore fresh = new DictionaryStore((word, before, after) -> { });
+        try (WriteAheadLog log = new WriteAheadLog(file(), WriteAheadLog.FsyncPolicy.OS, 5)) {
+            assertEquals(THREADS * APPENDS, log.replay(fresh));
+        }
+        int[] words = {0};
+        fresh.forEach((word, meanings) -> words[0]++);
+        assertEquals(THREADS * APPENDS, words[0]);
+    }
+
+    // With a long interval every append of a burst lands in the batch the next fsync completes
+    @Test
+    void burstSharesOneBatch() throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(file(), WriteAheadLog.FsyncPolicy.INTERVAL, 1000)) {
+            Set<CompletableFuture<Void>> batches = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < APPENDS; i++) batches.add(append(log, "word" + letters(i)));
+            // A flush may happen to fall inside the burst and split it once
+            assertTrue(batches.size() <= 2, batches.size() + " batches");
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).get();
+            assertEquals(APPENDS, Files.readAllLines(Paths.get(file() + ".log")).size());
+        }
+    }
+
+    @Test
+    void appendAfterCloseFails() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(file(), WriteAheadLog.FsyncPolicy.ALWAYS, 5);
+        log.close();
+        CompletableFuture<Void> future = append(log, "apple");
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertEquals("Log is closed.", e.getCause().getMessage());
+    }
+
+    // Letters only, distinct for every i
+    private static String letters(int i) {
+        StringBuilder word = new StringBuilder();
+        do {
+            word.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return word.toString();
+    }
+}
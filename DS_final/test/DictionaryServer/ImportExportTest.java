@@ -0,0 +1,124 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.json.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import DictionaryProtocol.ChunkCodec;
+
+// Exporting a dictionary in gzipped chunks and importing them into an empty server gives the
+// same dictionary back
+@Timeout(120)
+class ImportExportTest {
+    private static final int WORDS = 250;
+    private static final int CHUNK = 40;
+
+    @TempDir
+    Path dir;
+
+    private ServerProcesses servers;
+
+    @AfterEach
+    void tearDown() {
+        if (servers != null) servers.close();
+    }
+
+    @Test
+    void gzipChunksRoundTrip() throws Exception {
+        servers = new ServerProcesses(dir);
+        JSONObject original = new JSONObject();
+        for (int i = 0; i < WORDS; i++) {
+            JSONArray meanings = new JSONArray().put("meaning of " + word(i));
+            if (i % 3 == 0) meanings.put("with \"quotes\", a \\ and ünïcödé");
+            original.put(word(i), meanings);
+        }
+        Process source = servers.start(file("source.json", original.toString()));
+        Process target = servers.start(file("target.json", "{}"));
+
+        int chunks = 0;
+        String after = null;
+        do {
+            JSONObject request = new JSONObject().put("request", "export").put("limit", CHUNK).put("compress", ChunkCodec.GZIP);
+            if (after != null) request.put("after", after);
+            JSONObject chunk = servers.send(source, request);
+            assertEquals("success", chunk.optString("status"), chunk.toString());
+            assertEquals(ChunkCodec.GZIP, chunk.optString("compress"));
+            JSONObject entries = new JSONObject(ChunkCodec.decompress(chunk.getString("data"), Integer.MAX_VALUE));
+            assertEquals(chunk.getInt("count"), entries.length());
+
+            JSONObject imported = servers.send(target, new JSONObject().put("request", "import")
+                    .put("compress", ChunkCodec.GZIP).put("data", chunk.getString("data")));
+            assertEquals(entries.length(), imported.getInt("imported"), imported.toString());
+            assertEquals(0, imported.getInt("failed"), imported.toString());
+            after = chunk.optString("next", null);
+            chunks++;
+        } while (after != null);
+        assertEquals((WORDS + CHUNK - 1) / CHUNK, chunks);
+        assertEquals(original.toMap(), exportAll(target).toMap());
+
+        // A second import of the same words fails them all unless it replaces
+        JSONObject again = new JSONObject().put("request", "import").put("compress", ChunkCodec.GZIP)
+                .put("data", ChunkCodec.compress(new JSONObject().put(word(0), new JSONArray().put("changed")).toString()));
+        JSONObject failed = servers.send(target, again);
+        assertEquals(0, failed.getInt("imported"));
+        assertEquals(1, failed.getInt("failed"));
+        assertEquals(word(0), failed.getJSONArray("errors").getJSONObject(0).getString("word"));
+        assertEquals(1, servers.send(target, again.put("mode", "replace")).getInt("imported"));
+        assertEquals("[\"changed\"]", exportAll(target).getJSONArray(word(0)).toString());
+
+        servers.stop(source);
+        servers.stop(target);
+    }
+
+    @Test
+    void badChunksAreRefused() throws Exception {
+        servers = new ServerProcesses(dir);
+        Process server = servers.start(file("dictionary.json", "{}"));
+        for (JSONObject request : Arrays.asList(
+                new JSONObject().put("request", "import").put("compress", "zip").put("data", ChunkCodec.compress("{}")),
+                new JSONObject().put("request", "import").put("compress", ChunkCodec.GZIP).put("data", "not base64!"),
+                new JSONObject().put("request", "import").put("compress", ChunkCodec.GZIP).put("data", ChunkCodec.compress("[1]")))) {
+            JSONObject response = servers.send(server, request);
+            assertEquals("error", response.optString("status"), request.toString());
+            assertTrue(response.optString("message").startsWith("Bad import chunk"), response.toString());
+        }
+        servers.stop(server);
+    }
+
+    // Every word, in plain chunks
+    private JSONObject exportAll(Process server) throws Exception {
+        JSONObject all = new JSONObject();
+        String after = null;
+        do {
+            JSONObject request = new JSONObject().put("request", "export").put("limit", CHUNK);
+            if (after != null) request.put("after", after);
+            JSONObject chunk = servers.send(server, request);
+            JSONObject entries = chunk.getJSONObject("entries");
+            for (String word : entries.keySet()) all.put(word, entries.get(word));
+            after = chunk.optString("next", null);
+        } while (after != null);
+        return all;
+    }
+
+    private Path file(String name, String json) throws Exception {
+        Path file = dir.resolve(name);
+        Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    // Letters only, distinct for every i
+    private static String word(int i) {
+        StringBuilder word = new StringBuilder("word");
+        do {
+            word.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return word.toString();
+    }
+}
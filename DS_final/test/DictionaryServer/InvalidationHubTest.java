@@ -0,0 +1,63 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+// A subscriber stuck on its client must neither hold up the others nor the publishing writer
+@Timeout(30)
+class InvalidationHubTest {
+    @Test
+    void stuckSubscriberIsCutOffWithoutStallingTheOthers() throws Exception {
+        InvalidationHub hub = new InvalidationHub();
+        CountDownLatch stuckClosed = new CountDownLatch(1);
+        // Blocks on its first event until closed, like a write to a client that stopped reading
+        Recorder stuck = new Recorder() {
+            @Override
+            public void invalidate(String word) throws Exception {
+                stuckClosed.await();
+                throw new Exception("closed");
+            }
+
+            @Override
+            public void close() {
+                super.close();
+                stuckClosed.countDown();
+            }
+        };
+        Recorder healthy = new Recorder();
+        hub.subscribe(stuck);
+        hub.subscribe(healthy);
+
+        int events = InvalidationHub.MAX_PENDING * 2;
+        for (int i = 0; i < events; i++) hub.publish("word" + i);
+
+        assertTrue(stuckClosed.await(10, TimeUnit.SECONDS), "stuck subscriber not cut off");
+        assertEquals(1, stuck.closed);
+        for (int i = 0; i < events; i++) assertEquals("word" + i, healthy.words.poll(10, TimeUnit.SECONDS));
+        assertEquals(0, healthy.closed);
+
+        // Once cut off it gets nothing more, the others carry on
+        hub.publish("later");
+        assertEquals("later", healthy.words.poll(10, TimeUnit.SECONDS));
+        assertTrue(stuck.words.isEmpty());
+    }
+
+    private static class Recorder implements InvalidationHub.Subscriber {
+        final BlockingQueue<String> words = new LinkedBlockingQueue<>();
+        volatile int closed;
+
+        @Override
+        public void invalidate(String word) throws Exception {
+            words.add(word);
+        }
+
+        @Override
+        public void close() {
+            closed++;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+// A snapshot that cannot be read must stop the start, with every file left as it was: a
+// checkpoint of the part that was read would replace the good data and drop the log.
+@Timeout(120)
+class LoadFailureTest {
+    @TempDir
+    Path dir;
+
+    private ServerProcesses servers;
+
+    @AfterEach
+    void tearDown() {
+        if (servers != null) servers.close();
+    }
+
+    @Test
+    void corruptJsonStopsTheStart() throws Exception {
+        servers = new ServerProcesses(dir);
+        Path file = dir.resolve("dictionary.json");
+        Files.write(file, "{\"apple\": [\"a fruit\"], \"banana\": [\"a yellow fruit\"]}".getBytes(StandardCharsets.UTF_8));
+        Process server = servers.start(file);
+        servers.add(server, "cherry", "a red fruit");
+        servers.crash(server);
+
+        byte[] json = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(json, json.length / 2));
+        assertFailsToStart(file);
+    }
+
+    @Test
+    void missingSegmentStopsTheStart() throws Exception {
+        servers = new ServerProcesses(dir);
+        Path file = dir.resolve("dictionary.json");
+        Files.write(file, "{\"apple\": [\"a fruit\"]}".getBytes(StandardCharsets.UTF_8));
+        Process server = servers.start(file, "--snapshot=segments");
+        servers.add(server, "banana", "a yellow fruit");
+        servers.crash(server);
+
+        List<String> names = Files.readAllLines(Paths.get(file + ".segments"));
+        Files.delete(dir.resolve(names.get(0)));
+        assertFailsToStart(file, "--snapshot=segments");
+    }
+
+    private void assertFailsToStart(Path file, String... flags) throws Exception {
+        Map<Path, byte[]> before = contents();
+        assertTrue(before.keySet().stream().anyMatch(path -> path.toString().contains(".log")), "no log to keep");
+        Process server = servers.launch(ServerProcesses.freePort(), file, flags);
+        assertTrue(server.waitFor(30, TimeUnit.SECONDS), "Server started anyway");
+        assertNotEquals(0, server.exitValue());
+        assertTrue(servers.log().contains("Could not load the dictionary"), servers.log());
+
+        Map<Path, byte[]> after = contents();
+        assertEquals(before.keySet(), after.keySet());
+        for (Path path : before.keySet()) assertArrayEquals(before.get(path), after.get(path), path.toString());
+    }
+
+    private Map<Path, byte[]> contents() throws Exception {
+        Map<Path, byte[]> files = new TreeMap<>();
+        try (DirectoryStream<Path> all = Files.newDirectoryStream(dir, "dictionary.json*")) {
+            for (Path path : all) files.put(path, Files.readAllBytes(path));
+        }
+        return files;
+    }
+}
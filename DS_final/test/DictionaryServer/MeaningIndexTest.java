@@ -0,0 +1,63 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+class MeaningIndexTest {
+    @Test
+    void churnReusesWordIds() {
+        MeaningIndex index = new MeaningIndex();
+        for (int i = 0; i < 100_000; i++) {
+            String word = "word" + i;
+            List<String> meanings = Collections.singletonList("meaning number " + (i % 7));
+            index.update(word, Collections.emptyList(), meanings, meanings);
+            index.removeWord(word, meanings);
+        }
+        assertEquals(1, index.idSpace());
+        assertEquals(Collections.emptyList(), index.search("meaning", true, 10));
+    }
+
+    @Test
+    void reusedIdOnlyMatchesItsNewWord() {
+        MeaningIndex index = new MeaningIndex();
+        List<String> fruit = Collections.singletonList("a sweet fruit");
+        List<String> tool = Collections.singletonList("a heavy tool");
+        index.update("apple", Collections.emptyList(), fruit, fruit);
+        index.update("pear", Collections.emptyList(), fruit, fruit);
+        index.removeWord("apple", fruit);
+        index.update("hammer", Collections.emptyList(), tool, tool);
+
+        assertEquals(2, index.idSpace());
+        assertEquals(Collections.singletonList("pear"), index.search("sweet fruit", true, 10));
+        assertEquals(Collections.singletonList("hammer"), index.search("heavy", false, 10));
+        assertEquals(new HashSet<>(Arrays.asList("pear", "hammer")),
+                new HashSet<>(index.search("fruit tool", false, 10)));
+    }
+
+    @Test
+    void hotTokenFollowsEveryChange() {
+        MeaningIndex index = new MeaningIndex();
+        Random random = new Random(5);
+        Set<String> present = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            String word = "word" + random.nextInt(i < 100_000 ? 100_000 : 20_000);
+            List<String> meanings = Collections.singletonList("common " + word);
+            if (present.add(word)) {
+                index.update(word, Collections.emptyList(), meanings, meanings);
+            } else {
+                index.removeWord(word, meanings);
+                present.remove(word);
+            }
+            if (i % 10_000 == 0) {
+                assertEquals(present, new HashSet<>(index.search("common", true, Integer.MAX_VALUE)));
+            }
+        }
+        assertEquals(present, new HashSet<>(index.search("common", true, Integer.MAX_VALUE)));
+        for (String word : Arrays.asList("word1", "word12345", "word99999")) {
+            List<String> expected = present.contains(word) ? Collections.singletonList(word) : Collections.emptyList();
+            assertEquals(expected, index.search("common " + word, true, 10));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+// The fast path must either read a line exactly as JSONObject does or leave it to the general path
+class QueryFastPathTest {
+    private static final byte[] RESPONSE = "{\"status\":\"success\"}\n".getBytes(StandardCharsets.UTF_8);
+
+    private final QueryFastPath fastPath = new QueryFastPath();
+
+    @Test
+    void plainQueriesAreReadLikeJson() {
+        assertReadLikeJson("{\"request\":\"query\",\"word\":\"apple\"}");
+        assertReadLikeJson("{\"word\":\"Apple\",\"request\":\"QUERY\"}");
+        assertReadLikeJson(" { \"request\" : \"query\" ,\t\"word\" : \"APPLE\" } \r");
+        assertReadLikeJson("{\"request\":\"query\",\"word\":\"apple\",\"id\":7}");
+        assertReadLikeJson("{\"id\":123456789012345678,\"request\":\"query\",\"word\":\"apple\"}");
+        assertReadLikeJson("{\"request\":\"query\",\"id\":\"a-b c\",\"word\":\"apple\"}");
+    }
+
+    @Test
+    void escapesAreLeftToJson() {
+        assertDeclined("{\"request\":\"query\",\"word\":\"app\\u006ce\"}");
+        assertDeclined("{\"request\":\"q\\u0075ery\",\"word\":\"apple\"}");
+        assertDeclined("{\"req\\u0075est\":\"query\",\"word\":\"apple\"}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"id\":\"a\\\"b\"}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"id\":\"a/b\"}");
+    }
+
+    @Test
+    void nonAsciiIsLeftToJson() {
+        assertDeclined("{\"request\":\"query\",\"word\":\"café\"}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"Ångström\"}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"id\":\"café\"}");
+    }
+
+    @Test
+    void duplicateKeysAreLeftToJson() {
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"word\":\"pear\"}");
+        assertDeclined("{\"request\":\"query\",\"request\":\"query\",\"word\":\"apple\"}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"id\":1,\"id\":2}");
+    }
+
+    @Test
+    void extraFieldsAreLeftToJson() {
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"meanings\":[\"a fruit\"]}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"extra\":\"x\"}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"id\":null}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"id\":{\"n\":1}}");
+    }
+
+    @Test
+    void anythingElseIsLeftToJson() {
+        assertDeclined("{\"request\":\"add\",\"word\":\"apple\"}");
+        assertDeclined("{\"request\":\"query\"}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"\"}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"two words\"}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\"} trailing");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"id\":-1}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"id\":1.5}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"id\":007}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\",\"id\":1234567890123456789}");
+        assertDeclined("{\"request\":\"query\",\"word\":\"apple\"");
+        assertDeclined("");
+    }
+
+    // Accepted, with the word and the echoed id JSONObject would give
+    private void assertReadLikeJson(String line) {
+        byte[] bytes = bytes(line);
+        assertTrue(fastPath.parse(bytes, 0, bytes.length), line);
+        JSONObject request = new JSONObject(line);
+        assertEquals(request.getString("word").toLowerCase(), fastPath.word(), line);
+
+        String expected = new String(RESPONSE, StandardCharsets.UTF_8);
+        if (request.has("id")) {
+            expected = expected.substring(0, expected.length() - 2) + ",\"id\":"
+                    + JSONObject.valueToString(request.get("id")) + "}\n";
+        }
+        assertEquals(expected, new String(fastPath.withId(RESPONSE), StandardCharsets.UTF_8), line);
+    }
+
+    private void assertDeclined(String line) {
+        byte[] bytes = bytes(line);
+        assertFalse(fastPath.parse(bytes, 0, bytes.length), line);
+        // Also when the line sits in the middle of a larger buffer, as LineReader hands it over
+        byte[] padded = bytes("xx" + line + "yy");
+        assertFalse(fastPath.parse(padded, 2, padded.length - 2), line);
+    }
+
+    private static byte[] bytes(String line) {
+        return line.getBytes(StandardCharsets.UTF_8);
+    }
+}
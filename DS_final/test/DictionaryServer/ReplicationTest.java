@@ -0,0 +1,96 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import org.json.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+// A replica catches up from a snapshot, follows the stream, and after a restart or a crash
+// resumes from its own log instead of starting over
+@Timeout(120)
+class ReplicationTest {
+    @TempDir
+    Path dir;
+
+    private ServerProcesses servers;
+
+    @AfterEach
+    void tearDown() {
+        if (servers != null) servers.close();
+    }
+
+    @Test
+    void replicaCatchesUpAndResumes() throws Exception {
+        servers = new ServerProcesses(dir);
+        int replicationPort = ServerProcesses.freePort();
+        Process primary = servers.start(file("primary.json", "{\"apple\": [\"a fruit\"]}"),
+                "--replication-port=" + replicationPort, "--fsync=always");
+        servers.add(primary, "banana", "a yellow fruit");
+
+        // A new replica has a different history, so it starts from a snapshot
+        Path replicaFile = file("replica.json", "{\"stale\": [\"only on the replica\"]}");
+        String[] replicaFlags = {"--replica-of=localhost:" + replicationPort, "--fsync=always"};
+        Process replica = servers.start(replicaFile, replicaFlags);
+        awaitCaughtUp(primary, replica);
+        assertFound(replica, "apple", "banana");
+        assertNotFound(replica, "stale");
+        JSONObject write = servers.send(replica, new JSONObject().put("request", "add").put("word", "cherry")
+                .put("meanings", new JSONArray().put("a red fruit")));
+        assertEquals("read_only", write.optString("code"));
+
+        // Then it follows the stream
+        servers.add(primary, "cherry", "a red fruit");
+        awaitCaughtUp(primary, replica);
+        assertFound(replica, "cherry");
+
+        // What it acknowledged is in its own log, so a crash loses none of it
+        servers.crash(replica);
+        servers.add(primary, "damson", "a plum");
+        replica = servers.start(replicaFile, replicaFlags);
+        awaitCaughtUp(primary, replica);
+        assertFound(replica, "apple", "banana", "cherry", "damson");
+        assertTrue(servers.log().contains("resumed at LSN"), servers.log());
+
+        servers.stop(replica);
+        servers.stop(primary);
+    }
+
+    private Path file(String name, String json) throws Exception {
+        Path file = dir.resolve(name);
+        Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private void awaitCaughtUp(Process primary, Process replica) throws Exception {
+        long lsn = replication(primary).getLong("lsn");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (true) {
+            JSONObject state = replication(replica);
+            if (state.optBoolean("connected") && state.optLong("appliedLsn") == lsn) return;
+            assertTrue(System.nanoTime() < deadline, "replica stuck at " + state + ", primary at " + lsn);
+            Thread.sleep(50);
+        }
+    }
+
+    private JSONObject replication(Process server) throws Exception {
+        return servers.send(server, new JSONObject().put("request", "stats")).getJSONObject("stats").getJSONObject("replication");
+    }
+
+    private void assertFound(Process server, String... words) throws Exception {
+        for (String word : words) {
+            JSONObject response = servers.send(server, new JSONObject().put("request", "query").put("word", word));
+            assertTrue(response.has("meanings"), word + ": " + response);
+        }
+    }
+
+    private void assertNotFound(Process server, String word) throws Exception {
+        JSONObject response = servers.send(server, new JSONObject().put("request", "query").put("word", word));
+        assertFalse(response.has("meanings"), word + ": " + response);
+    }
+}
@@ -0,0 +1,114 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.json.*;
+import DictionaryClient.ServerConnection;
+
+// Servers started as separate processes in one directory, for tests of what survives a restart:
+// the server keeps its state in statics, so a JVM can only ever hold one of them.
+final class ServerProcesses implements AutoCloseable {
+    private final Path dir;
+    private final Map<Process, Integer> ports = new HashMap<>();
+
+    ServerProcesses(Path dir) {
+        this.dir = dir;
+    }
+
+    Process start(Path file, String... flags) throws Exception {
+        return start(freePort(), file, flags);
+    }
+
+    Process start(int port, Path file, String... flags) throws Exception {
+        Process process = launch(port, file, flags);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (true) {
+            try (Socket ignored = new Socket("localhost", port)) {
+                return process;
+            } catch (IOException e) {
+                if (!process.isAlive() || System.nanoTime() > deadline) fail("Server did not start:\n" + log());
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    // Without waiting for it to listen, for starts that are meant to fail
+    Process launch(int port, Path file, String... flags) throws Exception {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", classPath(), "DictionaryServer.Server", String.valueOf(port), file.toString()));
+        command.addAll(Arrays.asList(flags));
+        Process process = new ProcessBuilder(command).directory(dir.toFile()).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(dir.resolve("server.log").toFile())).start();
+        ports.put(process, port);
+        return process;
+    }
+
+    // SIGTERM, so the shutdown hook checkpoints as on a normal stop
+    void stop(Process server) throws Exception {
+        server.destroy();
+        assertTrue(server.waitFor(30, TimeUnit.SECONDS), "Server did not stop");
+        assertFalse(log().contains("Exception"), log());
+    }
+
+    // SIGKILL: nothing is checkpointed, what survives is what the log made durable
+    void crash(Process server) throws Exception {
+        server.destroyForcibly();
+        assertTrue(server.waitFor(30, TimeUnit.SECONDS), "Server did not stop");
+    }
+
+    JSONObject send(Process server, JSONObject request) throws Exception {
+        try (ServerConnection connection = connect(server)) {
+            return connection.send(request).get();
+        }
+    }
+
+    void add(Process server, String word, String meaning) throws Exception {
+        JSONObject response = send(server, new JSONObject().put("request", "add").put("word", word)
+                .put("meanings", new JSONArray().put(meaning)));
+        assertEquals("success", response.optString("status"), response.toString());
+    }
+
+    ServerConnection connect(Process server) throws IOException {
+        return new ServerConnection("localhost", ports.get(server), false, false);
+    }
+
+    int port(Process server) {
+        return ports.get(server);
+    }
+
+    String log() throws IOException {
+        Path log = dir.resolve("server.log");
+        return Files.exists(log) ? new String(Files.readAllBytes(log), StandardCharsets.UTF_8) : "";
+    }
+
+    // Whatever a failed test left running
+    @Override
+    public void close() {
+        for (Process process : ports.keySet()) process.destroyForcibly();
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            return probe.getLocalPort();
+        }
+    }
+
+    // The server classes and the libraries they need, wherever the build put them
+    private static String classPath() throws Exception {
+        List<String> entries = new ArrayList<>();
+        for (Class<?> type : Arrays.asList(Server.class, JSONObject.class, Histogram.class)) {
+            entries.add(Paths.get(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+}
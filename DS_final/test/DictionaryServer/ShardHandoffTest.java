@@ -0,0 +1,118 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import org.json.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import DictionaryClient.ServerConnection;
+
+// "put" sets a word's whole state, so only another node's handoff may send it
+@Timeout(120)
+class ShardHandoffTest {
+    private static final String KEY = "handoff-secret";
+    private static final int WORDS = 200;
+
+    @TempDir
+    Path dir;
+
+    private ServerProcesses servers;
+
+    @AfterEach
+    void tearDown() {
+        if (servers != null) servers.close();
+    }
+
+    @Test
+    void putNeedsAPeerConnection() throws Exception {
+        servers = new ServerProcesses(dir);
+        Process server = servers.start(dictionary("a.json", "apple"), "--peer-key=" + KEY);
+        JSONObject put = put("apple", "overwritten");
+
+        assertEquals("error", servers.send(server, put).optString("status"));
+        JSONObject batch = servers.send(server, new JSONObject().put("request", "batch").put("ops", new JSONArray().put(put)));
+        assertEquals("error", batch.getJSONArray("results").getJSONObject(0).optString("status"));
+        try (ServerConnection connection = servers.connect(server)) {
+            assertEquals("error", connection.send(new JSONObject().put("request", "peer").put("key", "wrong")).get().optString("status"));
+            assertEquals("error", connection.send(put).get().optString("status"));
+            assertEquals("success", connection.send(new JSONObject().put("request", "peer").put("key", KEY)).get().optString("status"));
+            assertEquals("success", connection.send(put).get().optString("status"));
+        }
+        JSONObject query = servers.send(server, new JSONObject().put("request", "query").put("word", "apple"));
+        assertEquals("[\"overwritten\"]", query.getJSONArray("meanings").toString());
+        servers.stop(server);
+    }
+
+    @Test
+    void nodesHandingWordsToEachOtherBothFinish() throws Exception {
+        servers = new ServerProcesses(dir);
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        for (int i = 0; i < WORDS; i++) (i % 2 == 0 ? first : second).add(word(i));
+        Process a = servers.start(dictionary("a.json", first.toArray(new String[0])), "--peer-key=" + KEY);
+        Process b = servers.start(dictionary("b.json", second.toArray(new String[0])), "--peer-key=" + KEY);
+        String nodes = node(a) + "," + node(b);
+
+        CompletableFuture<JSONObject> fromA = ringAsync(a, nodes);
+        CompletableFuture<JSONObject> fromB = ringAsync(b, nodes);
+        assertEquals("success", fromA.get().optString("status"), fromA.get().toString());
+        assertEquals("success", fromB.get().optString("status"), fromB.get().toString());
+
+        int movedHere = 0;
+        for (int i = 0; i < WORDS; i++) {
+            JSONObject query = servers.send(a, new JSONObject().put("request", "query").put("word", word(i)));
+            if ("moved".equals(query.optString("code"))) {
+                assertEquals(node(b), query.optString("owner"));
+                query = servers.send(b, new JSONObject().put("request", "query").put("word", word(i)));
+            } else if (i % 2 == 1) {
+                movedHere++;
+            }
+            assertEquals("success", query.optString("status"), word(i) + ": " + query);
+        }
+        assertTrue(movedHere > 0, "nothing was handed to the first node");
+        servers.stop(a);
+        servers.stop(b);
+    }
+
+    private CompletableFuture<JSONObject> ringAsync(Process server, String nodes) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return servers.send(server, new JSONObject().put("request", "ring").put("node", node(server)).put("nodes", nodes));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private String node(Process server) {
+        return "localhost:" + servers.port(server);
+    }
+
+    private Path dictionary(String name, String... words) throws Exception {
+        JSONObject entries = new JSONObject();
+        for (String word : words) entries.put(word, new JSONArray().put("meaning of " + word));
+        Path file = dir.resolve(name);
+        Files.write(file, entries.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static JSONObject put(String word, String meaning) {
+        return new JSONObject().put("request", "put").put("word", word).put("meanings", new JSONArray().put(meaning));
+    }
+
+    // Letters only, distinct for every i
+    private static String word(int i) {
+        StringBuilder word = new StringBuilder("word");
+        do {
+            word.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return word.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.json.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+// Switching --snapshot modes between restarts must need no extra step
+@Timeout(120)
+class SnapshotSwitchTest {
+    @TempDir
+    Path dir;
+
+    private ServerProcesses servers;
+
+    @AfterEach
+    void tearDown() {
+        if (servers != null) servers.close();
+    }
+
+    @Test
+    void segmentsBackToJson() throws Exception {
+        servers = new ServerProcesses(dir);
+        Path file = dir.resolve("dictionary.json");
+        Files.write(file, "{\"apple\": [\"a fruit\"]}".getBytes(StandardCharsets.UTF_8));
+
+        Process server = servers.start(file, "--snapshot=segments");
+        servers.add(server, "banana", "a yellow fruit");
+        servers.stop(server);
+        assertTrue(Files.exists(Paths.get(file + ".segments")));
+
+        // The segments are loaded and the next checkpoint writes them out as JSON
+        server = servers.start(file);
+        servers.add(server, "cherry", "a red fruit");
+        servers.stop(server);
+        assertFalse(Files.exists(Paths.get(file + ".segments")), "manifest left behind");
+        assertFalse(Files.exists(Paths.get(file + ".log.1")), "rotated log left behind");
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(dir, "*.seg.*")) {
+            assertFalse(segments.iterator().hasNext(), "segment files left behind");
+        }
+        JSONObject saved = new JSONObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        assertEquals(new HashSet<>(Arrays.asList("apple", "banana", "cherry")), saved.keySet());
+
+        server = servers.start(file);
+        for (String word : Arrays.asList("apple", "banana", "cherry")) {
+            JSONObject response = servers.send(server, new JSONObject().put("request", "query").put("word", word));
+            assertEquals("success", response.optString("status"), word);
+        }
+        servers.stop(server);
+    }
+}
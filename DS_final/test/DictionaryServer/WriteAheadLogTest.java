@@ -0,0 +1,143 @@
+package DictionaryServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WriteAheadLogTest {
+    @TempDir
+    Path dir;
+
+    private final DictionaryStore store = new DictionaryStore((word, before, after) -> { });
+
+    private String file() {
+        return dir.resolve("dictionary.json").toString();
+    }
+
+    private WriteAheadLog open(WriteAheadLog.FsyncPolicy policy) throws Exception {
+        return new WriteAheadLog(file(), policy, 10);
+    }
+
+    private void add(WriteAheadLog log, String word, String meaning) throws Exception {
+        store.replace(word, new String[]{meaning});
+        log.append(word, store).get();
+    }
+
+    private DictionaryStore replayed() throws Exception {
+        DictionaryStore fresh = new DictionaryStore((word, before, after) -> { });
+        try (WriteAheadLog log = open(WriteAheadLog.FsyncPolicy.OS)) {
+            log.replay(fresh);
+        }
+        return fresh;
+    }
+
+    private Path logFile() {
+        return Paths.get(file() + ".log");
+    }
+
+    private static List<String> meanings(DictionaryStore store, String word) {
+        String[] meanings = store.get(word);
+        return meanings == null ? null : Arrays.asList(meanings);
+    }
+
+    @Test
+    void tornTailIsTruncatedAndTheLogCarriesOn() throws Exception {
+        try (WriteAheadLog log = open(WriteAheadLog.FsyncPolicy.ALWAYS)) {
+            add(log, "apple", "a fruit");
+            add(log, "banana", "a yellow fruit");
+        }
+        long complete = Files.size(logFile());
+        // A crash in the middle of writing the next record
+        byte[] next = WriteAheadLog.encode("{\"lsn\":3,\"word\":\"cherry\",\"op\":\"put\",\"meanings\":[\"a red fruit\"]}");
+        Files.write(logFile(), Arrays.copyOf(next, next.length / 2), StandardOpenOption.APPEND);
+
+        DictionaryStore fresh = replayed();
+        assertEquals(Arrays.asList("a fruit"), meanings(fresh, "apple"));
+        assertEquals(Arrays.asList("a yellow fruit"), meanings(fresh, "banana"));
+        assertNull(fresh.get("cherry"));
+        assertEquals(complete, Files.size(logFile()));
+
+        // Records appended after the truncation replay as well
+        try (WriteAheadLog log = open(WriteAheadLog.FsyncPolicy.ALWAYS)) {
+            log.replay(new DictionaryStore((word, before, after) -> { }));
+            assertEquals(2, log.lsn());
+            add(log, "cherry", "a red fruit");
+        }
+        assertEquals(Arrays.asList("a red fruit"), meanings(replayed(), "cherry"));
+    }
+
+    @Test
+    void recordFailingItsCrcEndsTheReplay() throws Exception {
+        try (WriteAheadLog log = open(WriteAheadLog.FsyncPolicy.ALWAYS)) {
+            add(log, "apple", "a fruit");
+            add(log, "banana", "a yellow fruit");
+            add(log, "cherry", "a red fruit");
+        }
+        // Same length, so only the checksum can tell
+        String text = new String(Files.readAllBytes(logFile()), StandardCharsets.UTF_8);
+        int firstEnd = text.indexOf('\n') + 1;
+        Files.write(logFile(), text.replace("a yellow fruit", "a yellow fluit").getBytes(StandardCharsets.UTF_8));
+
+        DictionaryStore fresh = replayed();
+        assertEquals(Arrays.asList("a fruit"), meanings(fresh, "apple"));
+        assertNull(fresh.get("banana"));
+        assertNull(fresh.get("cherry"));
+        assertEquals(firstEnd, Files.size(logFile()));
+    }
+
+    @Test
+    void decodeRejectsAnythingThatDoesNotCheckOut() {
+        String record = new String(WriteAheadLog.encode("{\"lsn\":1,\"word\":\"apple\",\"op\":\"remove\"}"),
+                StandardCharsets.UTF_8).trim();
+        assertEquals("apple", WriteAheadLog.decode(record).getString("word"));
+        assertNull(WriteAheadLog.decode(record.replace("apple", "appla")));
+        assertNull(WriteAheadLog.decode((record.charAt(0) == '0' ? "1" : "0") + record.substring(1)));
+        assertNull(WriteAheadLog.decode(record.substring(9)));
+        assertNull(WriteAheadLog.decode(""));
+    }
+
+    @Test
+    void rotatedLogReplaysBeforeTheActiveOne() throws Exception {
+        try (WriteAheadLog log = open(WriteAheadLog.FsyncPolicy.ALWAYS)) {
+            add(log, "apple", "a fruit");
+            add(log, "banana", "a yellow fruit");
+            assertEquals(2, log.rotate());
+            // The checkpoint crashed before it could discard the rotated log
+            add(log, "apple", "a tree");
+            log.append("banana", removed("banana")).get();
+        }
+        assertTrue(Files.size(Paths.get(file() + ".log.1")) > 0);
+
+        DictionaryStore fresh = new DictionaryStore((word, before, after) -> { });
+        try (WriteAheadLog log = open(WriteAheadLog.FsyncPolicy.OS)) {
+            assertEquals(4, log.replay(fresh));
+            assertEquals(4, log.lsn());
+        }
+        assertEquals(Arrays.asList("a tree"), meanings(fresh, "apple"));
+        assertNull(fresh.get("banana"));
+    }
+
+    private DictionaryStore removed(String word) {
+        store.replace(word, null);
+        return store;
+    }
+
+    @Test
+    void rotatingOverAnUnfinishedCheckpointKeepsBothLogs() throws Exception {
+        try (WriteAheadLog log = open(WriteAheadLog.FsyncPolicy.ALWAYS)) {
+            add(log, "apple", "a fruit");
+            log.rotate();
+            // The checkpoint that should have discarded the rotated log never finished
+            add(log, "banana", "a yellow fruit");
+            log.rotate();
+            add(log, "cherry", "a red fruit");
+        }
+        assertFalse(Files.size(Paths.get(file() + ".log.1")) == 0);
+        DictionaryStore fresh = replayed();
+        for (String word : Arrays.asList("apple", "banana", "cherry")) assertNotNull(fresh.get(word), word);
+    }
+}